@@ -0,0 +1,305 @@
+package mgr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Walks a resolved tree and rebuilds it bottom up. A node is copied only
+// when one of its children was replaced, and copies keep the slots the
+// resolver assigned, so passes can run after resolution. Returning null
+// for a statement removes it. On its own the rewriter changes nothing and
+// only counts the nodes it visits.
+class AstRewriter implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    int visited = 0;
+
+    List<Stmt> rewrite(List<Stmt> statements) {
+        List<Stmt> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            Stmt rewritten = rewrite(statement);
+            if (rewritten != statement && result == null) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null && rewritten != null) result.add(rewritten);
+        }
+
+        return result != null ? result : statements;
+    }
+
+    Stmt rewrite(Stmt stmt) {
+        visited++;
+        return stmt.accept(this);
+    }
+
+    Expr rewrite(Expr expr) {
+        if (expr == null) return null;
+        visited++;
+        return expr.accept(this);
+    }
+
+    private List<Expr> rewriteAll(List<Expr> exprs) {
+        List<Expr> result = null;
+        for (int i = 0; i < exprs.size(); i++) {
+            Expr expr = exprs.get(i);
+            Expr rewritten = rewrite(expr);
+            if (rewritten != expr && result == null) {
+                result = new ArrayList<>(exprs.subList(0, i));
+            }
+            if (result != null) result.add(rewritten);
+        }
+
+        return result != null ? result : exprs;
+    }
+
+    // Statements that must stay statements, like loop bodies and branches,
+    // become an empty block when removed.
+    Stmt rewriteBranch(Stmt stmt) {
+        if (stmt == null) return null;
+        Stmt rewritten = rewrite(stmt);
+        return rewritten != null ? rewritten : new Stmt.Block(new ArrayList<>());
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = rewrite(expr.value);
+        if (value == expr.value) return expr;
+
+        Expr.Assign copy = new Expr.Assign(expr.name, value);
+        copy.depth = expr.depth;
+        copy.slot = expr.slot;
+        return copy;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = rewrite(expr.left);
+        Expr right = rewrite(expr.right);
+        if (left == expr.left && right == expr.right) return expr;
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = rewrite(expr.callee);
+        List<Expr> arguments = rewriteAll(expr.arguments);
+        if (callee == expr.callee && arguments == expr.arguments) return expr;
+
+        return new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = rewrite(expr.object);
+        if (object == expr.object) return expr;
+
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitNilGetExpr(Expr.NilGet expr) {
+        Expr object = rewrite(expr.object);
+        if (object == expr.object) return expr;
+
+        return new Expr.NilGet(object, expr.name);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = rewrite(expr.object);
+        Expr value = rewrite(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr first = rewrite(expr.first);
+        Expr second = rewrite(expr.second);
+        Expr third = rewrite(expr.third);
+        if (first == expr.first && second == expr.second && third == expr.third) return expr;
+
+        return new Expr.Ternary(expr.operator1, expr.operator2, first, second, third);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = rewrite(expr.expression);
+        if (expression == expr.expression) return expr;
+
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = rewrite(expr.left);
+        Expr right = rewrite(expr.right);
+        if (left == expr.left && right == expr.right) return expr;
+
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = rewrite(expr.right);
+        if (right == expr.right) return expr;
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitLambdaExpr(Expr.Lambda expr) {
+        List<Stmt> body = rewrite(expr.body);
+        if (body == expr.body) return expr;
+
+        Expr.Lambda copy = new Expr.Lambda(expr.params, body);
+        copy.frameSize = expr.frameSize;
+        return copy;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = rewrite(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+
+        Stmt.Block copy = new Stmt.Block(statements);
+        copy.scoped = stmt.scoped;
+        return copy;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        boolean changed = false;
+        List<Stmt.Function> methods = new ArrayList<>();
+        for (Stmt.Function method : stmt.methods) {
+            Stmt.Function rewritten = (Stmt.Function)rewrite(method);
+            changed |= rewritten != method;
+            methods.add(rewritten);
+        }
+
+        List<Stmt.Getter> getters = new ArrayList<>();
+        for (Stmt.Getter getter : stmt.getters) {
+            Stmt.Getter rewritten = (Stmt.Getter)rewrite(getter);
+            changed |= rewritten != getter;
+            getters.add(rewritten);
+        }
+
+        if (!changed) return stmt;
+        return new Stmt.Class(stmt.name, stmt.superclass, methods, getters);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        List<Stmt> body = rewrite(stmt.body);
+        if (body == stmt.body) return stmt;
+
+        Stmt.Function copy = new Stmt.Function(stmt.name, stmt.params, body);
+        copy.frameSize = stmt.frameSize;
+        return copy;
+    }
+
+    @Override
+    public Stmt visitGetterStmt(Stmt.Getter stmt) {
+        List<Stmt> body = rewrite(stmt.body);
+        if (body == stmt.body) return stmt;
+
+        return new Stmt.Getter(stmt.name, body);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = rewrite(stmt.condition);
+        Stmt thenBranch = rewriteBranch(stmt.thenBranch);
+        Stmt elseBranch = rewriteBranch(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = rewrite(stmt.value);
+        if (value == stmt.value) return stmt;
+
+        Stmt.Return copy = new Stmt.Return(stmt.keyword, value);
+        copy.tail = stmt.tail && value instanceof Expr.Call;
+        return copy;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = rewrite(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = rewrite(stmt.condition);
+        Stmt body = rewriteBranch(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt initializer = stmt.initializer != null ? rewrite(stmt.initializer) : null;
+        Expr condition = rewrite(stmt.condition);
+        Expr increment = rewrite(stmt.increment);
+        List<Stmt> body = rewrite(stmt.body);
+        if (initializer == stmt.initializer && condition == stmt.condition
+                && increment == stmt.increment && body == stmt.body) {
+            return stmt;
+        }
+
+        Stmt.For copy = new Stmt.For(initializer, condition, increment, body);
+        copy.scoped = stmt.scoped;
+        copy.captures = stmt.captures;
+        return copy;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+}
@@ -1,3 +0,0 @@
-package mgr;
-
-public class BreakException extends RuntimeException { }
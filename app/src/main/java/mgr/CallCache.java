@@ -0,0 +1,54 @@
+package mgr;
+
+// Per call site memory of the last callee that passed the call checks. A
+// call of the same callee again skips the callable check, the arity check
+// and the frame size lookup, and dispatches on the remembered target. The
+// guard is identity, so it holds for named functions, methods, classes and
+// natives, which live as long as the program; a site that keeps seeing
+// new callees, as with closures created per call, stops caching.
+//
+// Tasks on other threads run the same call sites, so what is remembered is
+// replaced as a whole and a call never pairs one callee with the frame
+// size of another.
+class CallCache {
+    private static final int LIMIT = 8;
+
+    private static final class Entry {
+        final Object callee;
+        final MgrCallable target;
+        final int frameSize;
+
+        Entry(MgrCallable callee, int frameSize) {
+            this.callee = callee;
+            this.target = callee;
+            this.frameSize = frameSize;
+        }
+    }
+
+    private volatile Entry entry = null;
+    private int misses = 0;
+
+    // The remembered target when callee is the remembered callee, or null.
+    MgrCallable target(Object callee) {
+        Entry entry = this.entry;
+        return entry != null && entry.callee == callee ? entry.target : null;
+    }
+
+    // The frame size for the remembered callee, or -1 for any other.
+    int frameSize(Object callee) {
+        Entry entry = this.entry;
+        return entry != null && entry.callee == callee ? entry.frameSize : -1;
+    }
+
+    // Remembers a callee that has just been checked. The frame has room
+    // for a receiver whether or not the site passes one.
+    void update(MgrCallable callee, int count) {
+        if (misses >= LIMIT) {
+            entry = null;
+            return;
+        }
+
+        misses++;
+        entry = new Entry(callee, Math.max(callee.frameSize(), count + 1));
+    }
+}
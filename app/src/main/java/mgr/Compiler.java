@@ -0,0 +1,648 @@
+package mgr;
+
+import mgr.vm.Chunk;
+import mgr.vm.OpCode;
+import mgr.vm.Prototype;
+import mgr.vm.VM;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Compiles resolved statements to bytecode for mgr.vm.VM. Locals live in
+// stack slots of their function's frame and are captured as upvalues, so
+// unlike the interpreter there are no Environment objects at runtime.
+// Globals are slots numbered by the VM the code will run on.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_LOCALS = 256;
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop {
+        final Loop enclosing;
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final Prototype.Kind kind;
+        final Chunk chunk = new Chunk();
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        Loop loop;
+
+        FunctionState(FunctionState enclosing, Prototype.Kind kind) {
+            this.enclosing = enclosing;
+            this.kind = kind;
+
+            // Slot 0 holds the receiver of methods and the callee otherwise.
+            boolean hasReceiver = kind == Prototype.Kind.METHOD
+                    || kind == Prototype.Kind.INITIALIZER
+                    || kind == Prototype.Kind.GETTER;
+            locals.add(new Local(hasReceiver ? "this" : "", 0));
+        }
+    }
+
+    private final VM vm;
+    private FunctionState current;
+    private int line = 1;
+
+    Compiler(VM vm) {
+        this.vm = vm;
+    }
+
+    Prototype compile(List<Stmt> statements) {
+        current = new FunctionState(null, Prototype.Kind.SCRIPT);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emitReturn();
+        return new Prototype("script", Prototype.Kind.SCRIPT, 0, 0, current.chunk);
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        declareVariable(stmt.name);
+        emitShortOp(OpCode.CLASS, identifierConstant(stmt.name));
+        defineVariable(stmt.name);
+
+        if (stmt.superclass != null) {
+            beginScope();
+            compile(stmt.superclass);
+            addLocal("super");
+            namedVariable(stmt.name, false);
+            emit(OpCode.INHERIT);
+        }
+
+        namedVariable(stmt.name, false);
+        for (Stmt.Getter getter : stmt.getters) {
+            function(getter.name.lexeme, Prototype.Kind.GETTER, new ArrayList<>(), getter.body);
+            emitShortOp(OpCode.GETTER, identifierConstant(getter.name));
+        }
+        for (Stmt.Function method : stmt.methods) {
+            Prototype.Kind kind = method.name.lexeme.equals("init")
+                    ? Prototype.Kind.INITIALIZER
+                    : Prototype.Kind.METHOD;
+            function(method.name.lexeme, kind, method.params, method.body);
+            emitShortOp(OpCode.METHOD, identifierConstant(method.name));
+        }
+        emit(OpCode.POP);
+
+        if (stmt.superclass != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        declareVariable(stmt.name);
+        function(stmt.name.lexeme, Prototype.Kind.FUNCTION, stmt.params, stmt.body);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitGetterStmt(Stmt.Getter stmt) {
+        line = stmt.name.line;
+        declareVariable(stmt.name);
+        function(stmt.name.lexeme, Prototype.Kind.FUNCTION, new ArrayList<>(), stmt.body);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else if (stmt.tail) {
+            call((Expr.Call)stmt.value, true);
+            emit(OpCode.RETURN);
+        } else {
+            compile(stmt.value);
+            emit(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.UNDEFINED);
+        }
+        // Declared only after the initializer, which the resolver has already
+        // checked doesn't refer to the variable itself.
+        declareVariable(stmt.name);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = current.chunk.count();
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+
+        current.loop = new Loop(current.loop, current.scopeDepth);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+
+        for (int jump : current.loop.breakJumps) {
+            patchJump(jump);
+        }
+        current.loop = current.loop.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        beginScope();
+        if (stmt.initializer != null) compile(stmt.initializer);
+
+        int loopStart = current.chunk.count();
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+
+        current.loop = new Loop(current.loop, current.scopeDepth);
+        beginScope();
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        endScope();
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emit(OpCode.POP);
+        }
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+
+        for (int jump : current.loop.breakJumps) {
+            patchJump(jump);
+        }
+        current.loop = current.loop.enclosing;
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.token.line;
+        if (current.loop == null) {
+            Mgr.error(stmt.token, "'break' must be inside a loop.");
+            return null;
+        }
+
+        // Discard the locals of the scopes being jumped out of without
+        // forgetting them, the code after the break still uses them.
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth <= current.loop.scopeDepth) break;
+            emit(local.isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+        current.loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        namedVariable(expr.name, true);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case SLASH: emit(OpCode.DIVIDE); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            case PLUS: emit(OpCode.ADD); break;
+            case ELVIS: emit(OpCode.ELVIS); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        call(expr, false);
+        return null;
+    }
+
+    // Calls in tail position, as marked by the resolver, reuse the frame
+    // of the function returning them, the way the interpreter makes them
+    // from its caller.
+    private void call(Expr.Call expr, boolean tail) {
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            compile(get.object);
+            for (Expr argument : expr.arguments) {
+                compile(argument);
+            }
+            line = expr.paren.line;
+            emitShortOp(tail ? OpCode.TAIL_INVOKE : OpCode.INVOKE, identifierConstant(get.name));
+            emit(expr.arguments.size());
+            return;
+        }
+
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.paren.line;
+        emit(tail ? OpCode.TAIL_CALL : OpCode.CALL);
+        emit(expr.arguments.size());
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitShortOp(OpCode.GET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitNilGetExpr(Expr.NilGet expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        int nilJump = emitJump(OpCode.JUMP_IF_NIL);
+        emitShortOp(OpCode.GET_PROPERTY, identifierConstant(expr.name));
+        patchJump(nilJump);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitShortOp(OpCode.SET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword, false);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        namedVariable(new Token(TokenType.THIS, "this", null, line), false);
+        namedVariable(expr.keyword, false);
+        emitShortOp(OpCode.GET_SUPER, identifierConstant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.first);
+        line = expr.operator1.line;
+        int elseJump = emitJump(OpCode.JUMP_IF_NOT_TRUE);
+        emit(OpCode.POP);
+        compile(expr.second);
+
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        emit(OpCode.POP);
+        compile(expr.third);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value == Boolean.TRUE) {
+            emit(OpCode.TRUE);
+        } else if (expr.value == Boolean.FALSE) {
+            emit(OpCode.FALSE);
+        } else {
+            emitShortOp(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG: emit(OpCode.NOT); break;
+            case MINUS: emit(OpCode.NEGATE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+        function(null, Prototype.Kind.LAMBDA, expr.params, expr.body);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name, false);
+        return null;
+    }
+
+    // Compiles a function body into its own prototype and emits the code
+    // creating a closure over it in the enclosing function.
+    private void function(String name, Prototype.Kind kind, List<Token> params, List<Stmt> body) {
+        FunctionState state = new FunctionState(current, kind);
+        current = state;
+        beginScope();
+
+        for (Token param : params) {
+            line = param.line;
+            addLocal(param.lexeme);
+        }
+        for (Stmt statement : body) {
+            compile(statement);
+        }
+        emitReturn();
+
+        current = state.enclosing;
+        Prototype prototype = new Prototype(name, kind, params.size(), state.upvalues.size(), state.chunk);
+        emitShortOp(OpCode.CLOSURE, makeConstant(prototype));
+        for (Upvalue upvalue : state.upvalues) {
+            emit(upvalue.isLocal ? 1 : 0);
+            emit(upvalue.index);
+        }
+    }
+
+    private void namedVariable(Token name, boolean assign) {
+        line = name.line;
+        int arg = resolveLocal(current, name.lexeme);
+        if (arg != -1) {
+            emit(assign ? OpCode.SET_LOCAL : OpCode.GET_LOCAL);
+            emit(arg);
+        } else if ((arg = resolveUpvalue(current, name.lexeme)) != -1) {
+            emit(assign ? OpCode.SET_UPVALUE : OpCode.GET_UPVALUE);
+            emit(arg);
+        } else {
+            emitShortOp(assign ? OpCode.SET_GLOBAL : OpCode.GET_GLOBAL, globalSlot(name));
+        }
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+
+        if (state.upvalues.size() == MAX_LOCALS) {
+            Mgr.error(line, "Too many closure variables in function.");
+            return 0;
+        }
+
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private void declareVariable(Token name) {
+        if (current.scopeDepth == 0) return;
+        addLocal(name.lexeme);
+    }
+
+    private void defineVariable(Token name) {
+        if (current.scopeDepth > 0) return;
+        emitShortOp(OpCode.DEFINE_GLOBAL, globalSlot(name));
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() == MAX_LOCALS) {
+            Mgr.error(line, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.get(locals.size() - 1).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private int globalSlot(Token name) {
+        int slot = vm.globalIndex(name.lexeme);
+        if (slot > 0xffff) {
+            Mgr.error(line, "Too many global variables.");
+            return 0;
+        }
+        return slot;
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name.lexeme);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = current.chunk.addConstant(value);
+        if (constant > 0xffff) {
+            Mgr.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private void emit(int b) {
+        current.chunk.write(b, line);
+    }
+
+    private void emitShortOp(byte op, int operand) {
+        emit(op);
+        emit((operand >> 8) & 0xff);
+        emit(operand & 0xff);
+    }
+
+    private void emitReturn() {
+        if (current.kind == Prototype.Kind.INITIALIZER) {
+            emit(OpCode.GET_LOCAL);
+            emit(0);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+    }
+
+    private int emitJump(byte op) {
+        emit(op);
+        emit(0xff);
+        emit(0xff);
+        return current.chunk.count() - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = current.chunk.count() - offset - 2;
+        if (jump > 0xffff) {
+            Mgr.error(line, "Too much code to jump over.");
+        }
+        current.chunk.patch(offset, (jump >> 8) & 0xff);
+        current.chunk.patch(offset + 1, jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = current.chunk.count() - loopStart + 2;
+        if (offset > 0xffff) {
+            Mgr.error(line, "Loop body too large.");
+        }
+        emit((offset >> 8) & 0xff);
+        emit(offset & 0xff);
+    }
+}
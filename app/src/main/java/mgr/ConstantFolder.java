@@ -0,0 +1,176 @@
+package mgr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Evaluates operators whose operands are literals, picks the branch of
+// conditionals whose condition is a literal, and drops parentheses, which
+// mean nothing once the tree is built. Folding follows the interpreter's
+// semantics and leaves alone anything that would raise a runtime error,
+// so the error is still reported when the code runs.
+class ConstantFolder extends AstRewriter {
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr rewritten = super.visitBinaryExpr(expr);
+        Expr.Binary binary = (Expr.Binary)rewritten;
+        if (!(binary.left instanceof Expr.Literal)) return rewritten;
+
+        Object left = ((Expr.Literal)binary.left).value;
+        if (binary.operator.type == TokenType.ELVIS) {
+            // Both operands are evaluated, so a non-nil left side only
+            // replaces the node when dropping the right side drops nothing.
+            if (left == null) return binary.right;
+            return binary.right instanceof Expr.Literal ? binary.left : rewritten;
+        }
+
+        if (!(binary.right instanceof Expr.Literal)) return rewritten;
+
+        Object right = ((Expr.Literal)binary.right).value;
+        Object value = fold(binary.operator.type, left, right);
+        return value != null ? new Expr.Literal(value) : rewritten;
+    }
+
+    // Returns the folded value, or null when the operation is left to run.
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL: return isEqual(left, right);
+            case BANG_EQUAL: return !isEqual(left, right);
+        }
+
+        if (left instanceof Double && right instanceof Double) {
+            double a = (double)left;
+            double b = (double)right;
+            switch (operator) {
+                case GREATER: return a > b;
+                case GREATER_EQUAL: return a >= b;
+                case LESS: return a < b;
+                case LESS_EQUAL: return a <= b;
+                case MINUS: return a - b;
+                case STAR: return a * b;
+                case PLUS: return a + b;
+                case SLASH: return b != 0 ? a / b : null;
+            }
+        } else if (left instanceof String && right instanceof String) {
+            String a = (String)left;
+            String b = (String)right;
+            switch (operator) {
+                case GREATER: return a.compareTo(b) > 0;
+                case GREATER_EQUAL: return a.compareTo(b) >= 0;
+                case LESS: return a.compareTo(b) < 0;
+                case LESS_EQUAL: return a.compareTo(b) <= 0;
+                case PLUS: return a + b;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr rewritten = super.visitUnaryExpr(expr);
+        Expr right = ((Expr.Unary)rewritten).right;
+        if (!(right instanceof Expr.Literal)) return rewritten;
+
+        Object value = ((Expr.Literal)right).value;
+        switch (expr.operator.type) {
+            case BANG: return new Expr.Literal(!isTruthy(value));
+            case MINUS:
+                if (value instanceof Double) return new Expr.Literal(-(double)value);
+        }
+
+        return rewritten;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = rewrite(expr.left);
+        if (!(left instanceof Expr.Literal)) {
+            Expr right = rewrite(expr.right);
+            if (left == expr.left && right == expr.right) return expr;
+            return new Expr.Logical(left, expr.operator, right);
+        }
+
+        boolean truthy = isTruthy(((Expr.Literal)left).value);
+        boolean decided = expr.operator.type == TokenType.OR ? truthy : !truthy;
+        return decided ? left : rewrite(expr.right);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr first = rewrite(expr.first);
+        if (!(first instanceof Expr.Literal)) {
+            Expr second = rewrite(expr.second);
+            Expr third = rewrite(expr.third);
+            if (first == expr.first && second == expr.second && third == expr.third) return expr;
+            return new Expr.Ternary(expr.operator1, expr.operator2, first, second, third);
+        }
+
+        // Like the interpreter, only the boolean true selects the first arm.
+        return Boolean.TRUE.equals(((Expr.Literal)first).value)
+            ? rewrite(expr.second)
+            : rewrite(expr.third);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return rewrite(expr.expression);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = rewrite(stmt.condition);
+        if (!(condition instanceof Expr.Literal)) {
+            Stmt thenBranch = rewriteBranch(stmt.thenBranch);
+            Stmt elseBranch = rewriteBranch(stmt.elseBranch);
+            if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+                return stmt;
+            }
+            return new Stmt.If(condition, thenBranch, elseBranch);
+        }
+
+        if (isTruthy(((Expr.Literal)condition).value)) return rewrite(stmt.thenBranch);
+        if (stmt.elseBranch != null) return rewrite(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = rewrite(stmt.condition);
+        if (condition instanceof Expr.Literal && !isTruthy(((Expr.Literal)condition).value)) {
+            return null;
+        }
+
+        Stmt body = rewriteBranch(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Expr condition = rewrite(stmt.condition);
+        if (!(condition instanceof Expr.Literal) || isTruthy(((Expr.Literal)condition).value)) {
+            return super.visitForStmt(stmt);
+        }
+
+        // Only the initializer runs, still in a scope of its own.
+        if (stmt.initializer == null) return null;
+        List<Stmt> initializer = new ArrayList<>();
+        initializer.add(rewrite(stmt.initializer));
+        Stmt.Block block = new Stmt.Block(initializer);
+        block.scoped = true;
+        return block;
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,20 @@
+package mgr;
+
+import java.util.List;
+
+// Drops the statements of a block or body that follow a return or break,
+// which control can never reach.
+class DeadCodeEliminator extends AstRewriter {
+    @Override
+    List<Stmt> rewrite(List<Stmt> statements) {
+        List<Stmt> rewritten = super.rewrite(statements);
+        for (int i = 0; i < rewritten.size() - 1; i++) {
+            Stmt statement = rewritten.get(i);
+            if (statement instanceof Stmt.Return || statement instanceof Stmt.Break) {
+                return rewritten.subList(0, i + 1);
+            }
+        }
+
+        return rewritten;
+    }
+}
@@ -1,54 +1,107 @@
 package mgr;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Environment {
+    private static final Object[] EMPTY = new Object[0];
+    // The value of a global slot whose name has been resolved but not yet
+    // defined.
+    private static final Object ABSENT = new Object();
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Local frames are indexed by the slots the resolver assigned to their
+    // declarations. The global environment gives every name it is asked
+    // about an index of its own, once, so resolved references to globals
+    // are array accesses too and stay valid when the name is defined later
+    // or redefined at the prompt.
+    private final Map<String, Integer> indices;
+    private Object[] slots = EMPTY;
+    private int count = 0;
+    // Global slots, in chunks that stay where they are when more are
+    // added, so tasks using globals on other threads while the prompt
+    // resolves new names neither miss values nor lose assignments.
+    private volatile Object[][] chunks;
 
     Environment() {
         enclosing = null;
+        indices = new HashMap<>();
+        chunks = new Object[0][];
     }
 
     Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        indices = null;
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    // A frame whose first count slots are already filled, typically with the
+    // arguments of a call. The array may be longer to leave room for locals.
+    Environment(Environment enclosing, Object[] slots, int count) {
+        this.enclosing = enclosing;
+        this.slots = slots;
+        this.count = count;
+        indices = null;
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+    synchronized int indexOf(String name) {
+        Integer index = indices.get(name);
+        if (index != null) return index;
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        int chunk = count >>> CHUNK_BITS;
+        if (chunk == chunks.length) {
+            Object[][] grown = Arrays.copyOf(chunks, chunk + 1);
+            grown[chunk] = new Object[CHUNK_SIZE];
+            Arrays.fill(grown[chunk], ABSENT);
+            chunks = grown;
         }
+        indices.put(name, count);
+        return count++;
+    }
+
+    void define(String name, Object value) {
+        int index = indexOf(name);
+        chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)] = value;
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    void define(Object value) {
+        if (count == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(4, count * 2));
+        }
+        slots[count++] = value;
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    // Empties a frame for another run of the same scope. Only valid once
+    // nothing refers to the frame any more.
+    Environment reset() {
+        count = 0;
+        return this;
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    void assignGlobal(Token name, int index, Object value) {
+        Object[] chunk = chunks[index >>> CHUNK_BITS];
+        if (chunk[index & (CHUNK_SIZE - 1)] == ABSENT) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
         }
+        chunk[index & (CHUNK_SIZE - 1)] = value;
+    }
 
-        if (enclosing != null) return enclosing.get(name);
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    Object getGlobal(Token name, int index) {
+        Object value = chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+        if (value == ABSENT) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        return value;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
     Environment ancestor(int distance) {
@@ -24,6 +24,8 @@ abstract class Expr {
 	static class Assign extends Expr {
 		final Token name;
 		final Expr value;
+		int depth = -1;
+		int slot;
 		Assign(Token name, Expr value) {
 			this.name = name;
 			this.value = value;
@@ -39,6 +41,7 @@ abstract class Expr {
 		final Expr left;
 		final Token operator;
 		final Expr right;
+		int seenTypes;
 		Binary(Expr left, Token operator, Expr right) {
 			this.left = left;
 			this.operator = operator;
@@ -55,6 +58,7 @@ abstract class Expr {
 		final Expr callee;
 		final Token paren;
 		final List<Expr> arguments;
+		CallCache site = new CallCache();
 		Call(Expr callee, Token paren, List<Expr> arguments) {
 			this.callee = callee;
 			this.paren = paren;
@@ -70,6 +74,7 @@ abstract class Expr {
 	static class Get extends Expr {
 		final Expr object;
 		final Token name;
+		InlineCache cache = new InlineCache();
 		Get(Expr object, Token name) {
 			this.object = object;
 			this.name = name;
@@ -99,6 +104,7 @@ abstract class Expr {
 		final Expr object;
 		final Token name;
 		final Expr value;
+		InlineCache cache = new InlineCache();
 		Set(Expr object, Token name, Expr value) {
 			this.object = object;
 			this.name = name;
@@ -113,6 +119,8 @@ abstract class Expr {
 
 	static class This extends Expr {
 		final Token keyword;
+		int depth = -1;
+		int slot;
 		This(Token keyword) {
 			this.keyword = keyword;
 		}
@@ -126,6 +134,7 @@ abstract class Expr {
 	static class Super extends Expr {
 		final Token keyword;
 		final Token method;
+		int depth = -1;
 		Super(Token keyword, Token method) {
 			this.keyword = keyword;
 			this.method = method;
@@ -214,6 +223,8 @@ abstract class Expr {
 	static class Lambda extends Expr {
 		final List<Token> params;
 		final List<Stmt> body;
+		int frameSize;
+		JitState jit = new JitState();
 		Lambda(List<Token> params, List<Stmt> body) {
 			this.params = params;
 			this.body = body;
@@ -227,6 +238,8 @@ abstract class Expr {
 
 	static class Variable extends Expr {
 		final Token name;
+		int depth = -1;
+		int slot;
 		Variable(Token name) {
 			this.name = name;
 		}
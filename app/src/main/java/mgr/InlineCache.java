@@ -0,0 +1,46 @@
+package mgr;
+
+// Per call site memory of where a property was found for the last few
+// receiver shapes. An entry holds the field index for the shape, or -1 and
+// the getter, method or native method the name resolved to. Property set
+// sites store the shape a new field transitions to as the member instead.
+// Once full the site is megamorphic and further shapes are looked up slowly.
+//
+// Entries are filled in before count covers them and never change after,
+// so a thread reading count sees whole entries even while another thread
+// adds one.
+class InlineCache {
+    private static final int LIMIT = 4;
+
+    private final Shape[] shapes = new Shape[LIMIT];
+    private final int[] indices = new int[LIMIT];
+    private final Object[] members = new Object[LIMIT];
+    private volatile int count = 0;
+
+    int find(Shape shape) {
+        int count = this.count;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) return i;
+        }
+        return -1;
+    }
+
+    synchronized int add(Shape shape, int index, Object member) {
+        if (count == LIMIT) return -1;
+
+        shapes[count] = shape;
+        indices[count] = index;
+        members[count] = member;
+        int entry = count;
+        count = entry + 1;
+        return entry;
+    }
+
+    int index(int entry) {
+        return indices[entry];
+    }
+
+    Object member(int entry) {
+        return members[entry];
+    }
+}
@@ -1,23 +1,65 @@
 package mgr;
 
-import mgr_native.*;
+import mgr_native.Natives;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+    // How a statement finished when it didn't simply run to its end, which
+    // statement visitors signal by returning null. RETURN leaves the value
+    // in returnValue for the function call that consumes it.
+    enum Completion {
+        BREAK,
+        RETURN
+    }
+
+    // Operand types recorded in Expr.Binary.seenTypes.
+    static final int SEEN_DOUBLE = 1;
+    static final int SEEN_STRING = 2;
+    static final int SEEN_OTHER = 4;
+
+    // The value of a function body that returned a call in tail position.
+    // The call itself waits in the tail fields for the function's caller
+    // to make, once the body's Java frames are gone.
+    static final Object TAIL_CALL = new Object();
+
+    // An Interpreter is the execution state of one thread: the current
+    // environment and the value or tail call a body is handing back. The
+    // main program runs on one, and each task started by spawn on a fork
+    // of it. The program's AST with its resolved slots, and the globals,
+    // are shared by all of them; the caches the AST carries are safe to
+    // update from several threads.
+    final Environment globals;
+    private Environment environment;
+    Object returnValue = null;
+    private MgrCallable tailCallee = null;
+    private MgrInstance tailReceiver = null;
+    private Object[] tailArguments = null;
+    // Set by a return statement for the call it returns, which is taken
+    // as a flag rather than an argument so that visitCallExpr needn't go
+    // through another method on every call.
+    private boolean tailPosition = false;
+    // Whether hot functions are handed to the Jit tier.
+    boolean jitEnabled = true;
 
     Interpreter() {
-        globals.define("input", new Input());
-        globals.define("clock", new Clock());
-        globals.define("reverse", new Reverse());
-        globals.define("Socket", new MgrSocket());
-        globals.define("ServerSocket", new MgrServerSocket());
+        globals = new Environment();
+        environment = globals;
+        Natives.create().forEach(globals::define);
+    }
+
+    private Interpreter(Interpreter parent) {
+        globals = parent.globals;
+        environment = globals;
+        jitEnabled = parent.jitEnabled;
+    }
+
+    // An interpreter for another thread, sharing this one's globals.
+    public Interpreter fork() {
+        return new Interpreter(this);
     }
 
     void interpret(List<Stmt> statements) {
@@ -30,39 +72,102 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
+    // Calls a function of no arguments as the body of a spawned task, on
+    // the task's thread. A runtime error ending the task is reported like
+    // one ending the program, and rethrown.
+    public Object runTask(MgrCallable function) {
+        try {
+            return function.call(this, Collections.emptyList());
+        } catch (RuntimeError error) {
+            Mgr.runtimeError(error);
+            throw error;
+        }
+    }
+
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    // Runs a single node in the given environment, for code compiled by the
+    // Jit that falls back to the interpreter for constructs it doesn't cover.
+    Object evaluateIn(Expr expr, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            return evaluate(expr);
+        } finally {
+            this.environment = previous;
+        }
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeIn(Stmt stmt, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            return execute(stmt);
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    private void declare(Token name, Object value) {
+        if (environment == globals) {
+            globals.define(name.lexeme, value);
+        } else {
+            environment.define(value);
+        }
+    }
+
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement : statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if (completion != null) return completion;
             }
+            return null;
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    // Runs a function body and returns its return value, or nil if it
+    // finishes without a return statement. It loops over the statements
+    // itself so that recursion doesn't pay for a call to executeBlock.
+    Object executeBody(List<Stmt> body, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+
+            for (Stmt statement : body) {
+                Completion completion = execute(statement);
+                if (completion == null) continue;
+                if (completion != Completion.RETURN) return null;
+
+                Object value = returnValue;
+                returnValue = null;
+                return value;
+            }
+            return null;
         } finally {
             this.environment = previous;
         }
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        if (!stmt.scoped) return executeBlock(stmt.statements, environment);
+        return executeBlock(stmt.statements, new Environment(environment));
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object sup = null;
         if (stmt.superclass != null) {
             sup = evaluate(stmt.superclass);
@@ -73,16 +178,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         MgrClass superclass = (MgrClass)sup;
 
-        environment.define(stmt.name.lexeme, null);
-
         if (stmt.superclass != null) {
             environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment.define(superclass);
         }
 
         Map<String, MgrFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            MgrFunction function = new MgrFunction(method, environment, method.name.lexeme.equals("init"));
+            MgrFunction function = new MgrFunction(method, environment, true, method.name.lexeme.equals("init"));
             methods.put(method.name.lexeme, function);
         }
 
@@ -96,20 +199,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (superclass != null) {
             environment = environment.enclosing;
         }
-        environment.assign(stmt.name, klass);
+        declare(stmt.name, klass);
         return null;
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.depth, expr.slot);
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        Object value = distance != null
-                ? environment.getAt(distance, name.lexeme)
-                : globals.get(name);
+    private Object lookUpVariable(Token name, int depth, int slot) {
+        Object value = depth != -1
+                ? environment.getAt(depth, slot)
+                : globals.getGlobal(name, slot);
 
         if (value instanceof Undefined) {
             throw new RuntimeError(name, "Accessing undefined value.");
@@ -119,13 +221,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = Undefined.getInstance();
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        declare(stmt.name, value);
         return null;
     }
 
@@ -133,81 +235,272 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
-            globals.assign(expr.name, value);
+            globals.assignGlobal(expr.name, expr.slot, value);
         }
 
         return value;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
         return null;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        MgrFunction function = new MgrFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        MgrFunction function = new MgrFunction(stmt, environment, false, false);
+        declare(stmt.name, function);
         return null;
     }
 
     @Override
-    public Void visitGetterStmt(Stmt.Getter stmt) {
+    public Completion visitGetterStmt(Stmt.Getter stmt) {
         MgrGetter getter = new MgrGetter(stmt, environment);
-        environment.define(stmt.name.lexeme, getter);
+        declare(stmt.name, getter);
         return null;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
         return null;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        int iterations = 0;
+        while (isTruthy(evaluate(stmt.condition))) {
+            Completion completion = execute(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+            if (jitEnabled && ++iterations == Jit.THRESHOLD) {
+                return stmt.jit.resume(this, stmt, environment);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Completion visitForStmt(Stmt.For stmt) {
+        Environment previous = this.environment;
         try {
+            Environment loop = new Environment(previous);
+            this.environment = loop;
+            if (stmt.initializer != null) execute(stmt.initializer);
+
+            // Unless a closure may keep it, one frame serves every iteration.
+            Environment iteration = !stmt.scoped ? loop : stmt.captures ? null : new Environment(loop);
+            int iterations = 0;
             while (isTruthy(evaluate(stmt.condition))) {
-                execute(stmt.body);
+                Environment scope = iteration == loop ? loop
+                    : iteration != null ? iteration.reset()
+                    : new Environment(loop);
+                Completion completion = executeBlock(stmt.body, scope);
+                if (completion == Completion.BREAK) break;
+                if (completion == Completion.RETURN) return completion;
+                if (stmt.increment != null) evaluate(stmt.increment);
+                if (jitEnabled && ++iterations == Jit.THRESHOLD) {
+                    return stmt.jit.resume(this, stmt, loop);
+                }
             }
-        } catch (BreakException ignored) { }
-        return null;
+            return null;
+        } finally {
+            this.environment = previous;
+        }
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new BreakException();
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
         return null;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
-        if (stmt.value != null) value = evaluate(stmt.value);
+        if (stmt.tail) {
+            tailPosition = true;
+            value = visitCallExpr((Expr.Call)stmt.value);
+        } else if (stmt.value != null) {
+            value = evaluate(stmt.value);
+        }
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        // Operators that have only ever seen one operand type take a path
+        // specialized to it behind a cheap guard. Anything else widens the
+        // recorded types, which sends later evaluations down the generic path.
+        if (expr.seenTypes == SEEN_DOUBLE) {
+            // Only operands that compute a number themselves go through
+            // evaluateDouble. Calls and variables are evaluated right here, so
+            // a recursive call in an operand doesn't sit two frames deeper.
+            double left;
+            if (Jit.isUnboxed(expr.left)) {
+                try {
+                    left = evaluateDouble(expr.left);
+                } catch (UnexpectedResult result) {
+                    return deoptimize(expr, result.value, evaluate(expr.right));
+                }
+            } else {
+                Object value = evaluate(expr.left);
+                if (!(value instanceof Double)) return deoptimize(expr, value, evaluate(expr.right));
+                left = (double)value;
+            }
+
+            double right;
+            if (Jit.isUnboxed(expr.right)) {
+                try {
+                    right = evaluateDouble(expr.right);
+                } catch (UnexpectedResult result) {
+                    return deoptimize(expr, left, result.value);
+                }
+            } else {
+                Object value = evaluate(expr.right);
+                if (!(value instanceof Double)) return deoptimize(expr, left, value);
+                right = (double)value;
+            }
+
+            return doubleBinary(expr, left, right);
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
+        if (expr.seenTypes == SEEN_STRING) {
+            if (Strings.isString(left) && Strings.isString(right)) {
+                return stringBinary(expr, left, right);
+            }
+        }
+
+        return deoptimize(expr, left, right);
+    }
+
+    Object deoptimize(Expr.Binary expr, Object left, Object right) {
+        expr.seenTypes |= typeOf(left) | typeOf(right);
+        return genericBinary(expr, left, right);
+    }
+
+    // Evaluates an expression that is expected to produce a number without
+    // boxing the intermediate results of numeric operators below it. Throws
+    // UnexpectedResult with the actual value when the expectation fails.
+    private double evaluateDouble(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return expectDouble(((Expr.Literal)expr).value);
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)expr;
+            if (binary.seenTypes == SEEN_DOUBLE && isArithmetic(binary.operator.type)) {
+                double left;
+                try {
+                    left = evaluateDouble(binary.left);
+                } catch (UnexpectedResult result) {
+                    return expectDouble(deoptimize(binary, result.value, evaluate(binary.right)));
+                }
+
+                double right;
+                try {
+                    right = evaluateDouble(binary.right);
+                } catch (UnexpectedResult result) {
+                    return expectDouble(deoptimize(binary, left, result.value));
+                }
+
+                return arithmetic(binary.operator, left, right);
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateDouble(((Expr.Grouping)expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary)expr;
+            if (unary.operator.type == TokenType.MINUS) {
+                try {
+                    return -evaluateDouble(unary.right);
+                } catch (UnexpectedResult result) {
+                    checkNumberOperand(unary.operator, result.value);
+                }
+            }
+        }
+
+        return expectDouble(evaluate(expr));
+    }
+
+    private static double expectDouble(Object value) {
+        if (value instanceof Double) return (double)value;
+        throw new UnexpectedResult(value);
+    }
+
+    static boolean isArithmetic(TokenType type) {
+        return type == TokenType.MINUS || type == TokenType.SLASH
+                || type == TokenType.STAR || type == TokenType.PLUS;
+    }
+
+    static double arithmetic(Token operator, double left, double right) {
+        switch (operator.type) {
+            case MINUS: return left - right;
+            case SLASH:
+                if (right == 0) {
+                    throw new RuntimeError(operator, "Zero division error");
+                }
+                return left / right;
+            case STAR: return left * right;
+            default: return left + right;
+        }
+    }
+
+    private static int typeOf(Object value) {
+        if (value instanceof Double) return SEEN_DOUBLE;
+        if (Strings.isString(value)) return SEEN_STRING;
+        return SEEN_OTHER;
+    }
+
+    private static Object doubleBinary(Expr.Binary expr, double left, double right) {
+        switch (expr.operator.type) {
+            // Same as Double.equals, which the generic path uses.
+            case BANG_EQUAL: return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            case EQUAL_EQUAL: return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            case LESS_EQUAL: return left <= right;
+            case ELVIS: return left;
+            default: return arithmetic(expr.operator, left, right);
+        }
+    }
+
+    // Both operands are string values.
+    Object stringBinary(Expr.Binary expr, Object leftValue, Object rightValue) {
+        if (expr.operator.type == TokenType.PLUS) return Strings.concat(leftValue, rightValue.toString());
+        if (expr.operator.type == TokenType.ELVIS) return leftValue;
+
+        switch (expr.operator.type) {
+            case BANG_EQUAL: return !Strings.equal(leftValue, rightValue);
+            case EQUAL_EQUAL: return Strings.equal(leftValue, rightValue);
+            case GREATER: return Strings.compare(leftValue, rightValue) > 0;
+            case GREATER_EQUAL: return Strings.compare(leftValue, rightValue) >= 0;
+            case LESS: return Strings.compare(leftValue, rightValue) < 0;
+            case LESS_EQUAL: return Strings.compare(leftValue, rightValue) <= 0;
+        }
+
+        // Arithmetic on strings is an error, reported by the generic path.
+        return genericBinary(expr, leftValue, rightValue);
+    }
+
+    Object genericBinary(Expr.Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case BANG_EQUAL: return !isEqual(left, right);
             case EQUAL_EQUAL: return isEqual(left, right);
@@ -216,8 +509,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (double) left > (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return ((String)left).compareTo((String)right) > 0;
+                if (Strings.isString(left) && Strings.isString(right)) {
+                    return Strings.compare(left, right) > 0;
                 }
 
                 if (left instanceof Boolean && right instanceof Boolean) {
@@ -230,8 +523,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (double) left >= (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return ((String)left).compareTo((String)right) >= 0;
+                if (Strings.isString(left) && Strings.isString(right)) {
+                    return Strings.compare(left, right) >= 0;
                 }
 
                 if (left instanceof Boolean && right instanceof Boolean) {
@@ -244,8 +537,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (double) left < (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return ((String)left).compareTo((String)right) < 0;
+                if (Strings.isString(left) && Strings.isString(right)) {
+                    return Strings.compare(left, right) < 0;
                 }
 
                 if (left instanceof Boolean && right instanceof Boolean) {
@@ -257,8 +550,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left <= (double) right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return ((String)left).compareTo((String)right) <= 0;
+                if (Strings.isString(left) && Strings.isString(right)) {
+                    return Strings.compare(left, right) <= 0;
                 }
 
                 if (left instanceof Boolean && right instanceof Boolean) {
@@ -283,16 +576,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (double)left + (double)right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
+                if (Strings.isString(left)) {
+                    return Strings.concat(left, stringify(right));
                 }
 
-                if (left instanceof String) {
-                    return (String)left + stringify(right);
-                }
-
-                if (right instanceof String) {
-                    return stringify(left) + (String)right;
+                if (Strings.isString(right)) {
+                    return stringify(left) + right;
                 }
 
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
@@ -306,32 +595,161 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        boolean tail = tailPosition;
+        tailPosition = false;
+
+        // A method called straight off its receiver, as in obj.method() or
+        // super.method(), is invoked unbound with the receiver passed along.
+        Object callee;
+        MgrInstance receiver = null;
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            Object object = evaluate(get.object);
+            MgrCallable method = object instanceof MgrInstance
+                ? ((MgrInstance)object).method(get.name, get.cache)
+                : null;
+            if (method != null) {
+                receiver = (MgrInstance)object;
+                callee = method;
+            } else {
+                callee = getProperty(get, object);
+            }
+        } else if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super)expr.callee;
+            receiver = (MgrInstance)environment.getAt(sup.depth - 1, 0);
+            callee = findSuperMethod(sup, environment);
+        } else {
+            callee = evaluate(expr.callee);
+        }
+
+        Object[] arguments = frameFor(expr, callee, receiver);
+        int offset = receiver != null ? 1 : 0;
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            arguments[offset + i] = evaluate(expr.arguments.get(i));
+        }
+
+        if (tail) return tailCall(expr, callee, receiver, arguments);
+
+        // The same as call, written out to keep a frame off recursion.
+        MgrCallable function = check(expr, callee);
+        try {
+            if (receiver != null) {
+                arguments[0] = receiver;
+                if (function instanceof NativeMethod) return ((NativeMethod)function).invoke(this, arguments);
+                return ((MgrFunction)function).invoke(this, arguments);
+            } else if (function instanceof MgrFunction) {
+                MgrFunction target = (MgrFunction)function;
+                return target.invoke(this, target.frame(arguments));
+            }
+            return function.call(this, arguments);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
+    }
+
+    // The arguments are evaluated straight into an array sized for the
+    // callee's frame, after the receiver slot of a direct method call.
+    static Object[] frameFor(Expr.Call expr, Object callee, MgrInstance receiver) {
+        int size = expr.site.frameSize(callee);
+        if (size != -1) return new Object[size];
+
+        int offset = receiver != null ? 1 : 0;
+        int frameSize = callee instanceof MgrCallable ? ((MgrCallable)callee).frameSize() : 0;
+        return new Object[Math.max(frameSize, offset + expr.arguments.size())];
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+    Object call(Expr.Call expr, Object callee, MgrInstance receiver, Object[] arguments) {
+        MgrCallable function = check(expr, callee);
+        try {
+            // Dispatched right here rather than through a helper, since every
+            // frame between two levels of script recursion costs stack depth.
+            if (receiver != null) {
+                arguments[0] = receiver;
+                if (function instanceof NativeMethod) return ((NativeMethod)function).invoke(this, arguments);
+                return ((MgrFunction)function).invoke(this, arguments);
+            } else if (function instanceof MgrFunction) {
+                MgrFunction target = (MgrFunction)function;
+                return target.invoke(this, target.frame(arguments));
+            }
+            return function.call(this, arguments);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(expr.paren, "Stack overflow.");
         }
+    }
+
+    // Checks a call the same way but leaves it for finishTailCalls. Only
+    // functions and lambdas can recurse, so anything else is called here.
+    Object tailCall(Expr.Call expr, Object callee, MgrInstance receiver, Object[] arguments) {
+        MgrCallable function = check(expr, callee);
+        if (!(function instanceof MgrFunction) && !(function instanceof MgrLambda)) {
+            return call(expr, function, receiver, arguments);
+        }
+
+        tailCallee = function;
+        tailReceiver = receiver;
+        tailArguments = arguments;
+        return TAIL_CALL;
+    }
+
+    private MgrCallable check(Expr.Call expr, Object callee) {
+        CallCache site = expr.site;
+        MgrCallable target = site.target(callee);
+        if (target != null) return target;
 
+        int count = expr.arguments.size();
         if (!(callee instanceof MgrCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         MgrCallable function = (MgrCallable)callee;
-        if (arguments.size() != function.arity()) {
+        if (count != function.arity()) {
             throw new RuntimeError(expr.paren,
-        "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+        "Expected " + function.arity() + " arguments but got " + count + ".");
         }
-        return function.call(this, arguments);
+        site.update(function, count);
+        return function;
+    }
+
+    // Makes the pending tail calls a function body left behind, one after
+    // the other in a loop, until one returns a plain value. Functions and
+    // lambdas are run without finishing their own tail calls, so a chain of
+    // them, self or mutually recursive, takes constant Java stack.
+    Object finishTailCalls(Object value) {
+        while (value == TAIL_CALL) {
+            MgrCallable function = tailCallee;
+            MgrInstance receiver = tailReceiver;
+            Object[] arguments = tailArguments;
+            tailCallee = null;
+            tailReceiver = null;
+            tailArguments = null;
+
+            if (receiver != null) {
+                arguments[0] = receiver;
+                value = ((MgrFunction)function).run(this, arguments);
+            } else if (function instanceof MgrFunction) {
+                MgrFunction target = (MgrFunction)function;
+                value = target.run(this, target.frame(arguments));
+            } else {
+                value = ((MgrLambda)function).run(this, arguments);
+            }
+        }
+        return value;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = evaluate(expr.object);
+        return getProperty(expr, evaluate(expr.object));
+    }
+
+    Object getProperty(Expr.Get expr, Object object) {
         if (object instanceof MgrInstance) {
-            Object property = ((MgrInstance)object).get(expr.name);
+            Object property = ((MgrInstance)object).get(expr.name, expr.cache);
             if (property instanceof MgrGetter) {
-                return ((MgrGetter)property).call(this, null);
+                return ((MgrGetter)property).get(this);
             }
             return property;
         }
@@ -360,27 +778,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((MgrInstance)object).set(expr.name, value);
+        ((MgrInstance)object).set(expr.name, value, expr.cache);
         return value;
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        MgrClass superclass = (MgrClass)environment.getAt(distance, "super");
-        MgrInstance object = (MgrInstance)environment.getAt(distance - 1, "this");
+        MgrInstance object = (MgrInstance)environment.getAt(expr.depth - 1, 0);
+        return findSuperMethod(expr, environment).bind(object);
+    }
+
+    MgrFunction findSuperMethod(Expr.Super expr, Environment environment) {
+        MgrClass superclass = (MgrClass)environment.getAt(expr.depth, 0);
         MgrFunction method = superclass.findMethod(expr.method.lexeme);
 
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
         }
 
-        return method.bind(object);
+        return method;
     }
 
     @Override
@@ -433,7 +854,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
@@ -443,7 +864,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
@@ -453,10 +874,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
-        return a.equals(b);
+        return Strings.equal(a, b);
     }
 
-    private String stringify(Object object) {
+    public static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
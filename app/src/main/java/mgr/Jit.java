@@ -0,0 +1,635 @@
+package mgr;
+
+import java.util.List;
+
+import mgr.Interpreter.Completion;
+
+// The second execution tier. Once a function with a loop in it has been
+// called THRESHOLD times, or a loop has run that many iterations in one
+// go, its body is translated into a tree of closures specialized on what
+// the interpreter has seen so far: resolved variables become direct
+// frame accesses, and binary operators that have only ever seen numbers
+// run on unboxed doubles. Each closure is a small monomorphic method that
+// HotSpot can inline into its parent, which the visitor dispatch of the
+// interpreter never allows.
+//
+// A specialization whose guard fails evaluates the generic operation for
+// that one evaluation, widens the interpreter's type feedback and
+// invalidates the body. The function then runs in the interpreter again
+// until it is hot enough to be recompiled against the wider types.
+// Constructs the tier doesn't cover are handed back to the interpreter
+// node by node.
+final class Jit {
+    static final int THRESHOLD = 1000;
+
+    interface Code {
+        Object run(Interpreter interpreter, Environment environment);
+    }
+
+    interface DoubleCode {
+        double run(Interpreter interpreter, Environment environment);
+    }
+
+    interface StmtCode {
+        Completion run(Interpreter interpreter, Environment environment);
+    }
+
+    static final class Body {
+        private StmtCode[] statements;
+        boolean valid = true;
+
+        Completion execute(Interpreter interpreter, Environment environment) {
+            return Jit.run(statements, interpreter, environment);
+        }
+
+        Object run(Interpreter interpreter, Environment environment) {
+            if (execute(interpreter, environment) != Completion.RETURN) return null;
+
+            Object value = interpreter.returnValue;
+            interpreter.returnValue = null;
+            return value;
+        }
+    }
+
+    private final Body body = new Body();
+
+    private Jit() {
+    }
+
+    static Body compile(List<Stmt> statements) {
+        Jit jit = new Jit();
+        jit.body.statements = jit.statements(statements);
+        return jit.body;
+    }
+
+    // Whether statements contain a loop outside of nested functions.
+    static boolean hasLoop(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            if (hasLoop(stmt)) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasLoop(Stmt stmt) {
+        if (stmt instanceof Stmt.While || stmt instanceof Stmt.For) return true;
+        if (stmt instanceof Stmt.Block) return hasLoop(((Stmt.Block)stmt).statements);
+        if (stmt instanceof Stmt.If) {
+            Stmt.If branch = (Stmt.If)stmt;
+            return hasLoop(branch.thenBranch)
+                || (branch.elseBranch != null && hasLoop(branch.elseBranch));
+        }
+        return false;
+    }
+
+    // Compiles a loop the interpreter is in the middle of. All of its state
+    // lives in the environment, so the compiled loop simply takes over at
+    // the next evaluation of the condition. For a for loop that is the
+    // environment of its initializer, which has already run.
+    static Body compileLoop(Stmt loop) {
+        Jit jit = new Jit();
+        StmtCode code = loop instanceof Stmt.For ? jit.iterations((Stmt.For)loop) : jit.statement(loop);
+        jit.body.statements = new StmtCode[] { code };
+        return jit.body;
+    }
+
+    private static Completion run(StmtCode[] statements, Interpreter interpreter, Environment environment) {
+        for (StmtCode statement : statements) {
+            Completion completion = statement.run(interpreter, environment);
+            if (completion != null) return completion;
+        }
+        return null;
+    }
+
+    private StmtCode[] statements(List<Stmt> statements) {
+        StmtCode[] code = new StmtCode[statements.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = statement(statements.get(i));
+        }
+        return code;
+    }
+
+    private StmtCode statement(Stmt stmt) {
+        if (stmt instanceof Stmt.Expression) {
+            Code expression = expression(((Stmt.Expression)stmt).expression);
+            return (interpreter, environment) -> {
+                expression.run(interpreter, environment);
+                return null;
+            };
+        } else if (stmt instanceof Stmt.Print) {
+            Code expression = expression(((Stmt.Print)stmt).expression);
+            return (interpreter, environment) -> {
+                System.out.println(Interpreter.stringify(expression.run(interpreter, environment)));
+                return null;
+            };
+        } else if (stmt instanceof Stmt.Var) {
+            Expr initializer = ((Stmt.Var)stmt).initializer;
+            if (initializer == null) {
+                return (interpreter, environment) -> {
+                    environment.define(Undefined.getInstance());
+                    return null;
+                };
+            }
+            Code value = expression(initializer);
+            return (interpreter, environment) -> {
+                environment.define(value.run(interpreter, environment));
+                return null;
+            };
+        } else if (stmt instanceof Stmt.Block) {
+            Stmt.Block block = (Stmt.Block)stmt;
+            StmtCode[] statements = statements(block.statements);
+            if (!block.scoped) return (interpreter, environment) -> run(statements, interpreter, environment);
+            return (interpreter, environment) -> run(statements, interpreter, new Environment(environment));
+        } else if (stmt instanceof Stmt.If) {
+            return ifStatement((Stmt.If)stmt);
+        } else if (stmt instanceof Stmt.While) {
+            Stmt.While loop = (Stmt.While)stmt;
+            Code condition = expression(loop.condition);
+            StmtCode body = statement(loop.body);
+            return (interpreter, environment) -> {
+                while (Interpreter.isTruthy(condition.run(interpreter, environment))) {
+                    Completion completion = body.run(interpreter, environment);
+                    if (completion == Completion.BREAK) break;
+                    if (completion == Completion.RETURN) return completion;
+                }
+                return null;
+            };
+        } else if (stmt instanceof Stmt.For) {
+            Stmt.For loop = (Stmt.For)stmt;
+            StmtCode initializer = loop.initializer != null ? statement(loop.initializer) : null;
+            StmtCode iterations = iterations(loop);
+            return (interpreter, environment) -> {
+                Environment scope = new Environment(environment);
+                if (initializer != null) initializer.run(interpreter, scope);
+                return iterations.run(interpreter, scope);
+            };
+        } else if (stmt instanceof Stmt.Return) {
+            Stmt.Return ret = (Stmt.Return)stmt;
+            Code code;
+            if (ret.tail) {
+                code = call((Expr.Call)ret.value, true);
+            } else if (ret.value != null) {
+                code = expression(ret.value);
+            } else {
+                code = (interpreter, environment) -> null;
+            }
+            return (interpreter, environment) -> {
+                interpreter.returnValue = code.run(interpreter, environment);
+                return Completion.RETURN;
+            };
+        } else if (stmt instanceof Stmt.Break) {
+            return (interpreter, environment) -> Completion.BREAK;
+        }
+
+        // Declarations of functions, getters and classes.
+        return (interpreter, environment) -> interpreter.executeIn(stmt, environment);
+    }
+
+    private StmtCode iterations(Stmt.For loop) {
+        Code condition = expression(loop.condition);
+        Code increment = loop.increment != null ? expression(loop.increment) : (interpreter, environment) -> null;
+        StmtCode[] body = statements(loop.body);
+        boolean scoped = loop.scoped;
+        boolean captures = loop.captures;
+        return (interpreter, environment) -> {
+            Environment iteration = !scoped ? environment : captures ? null : new Environment(environment);
+            while (Interpreter.isTruthy(condition.run(interpreter, environment))) {
+                Environment scope = iteration == environment ? environment
+                    : iteration != null ? iteration.reset()
+                    : new Environment(environment);
+                Completion completion = run(body, interpreter, scope);
+                if (completion == Completion.BREAK) break;
+                if (completion == Completion.RETURN) return completion;
+                increment.run(interpreter, environment);
+            }
+            return null;
+        };
+    }
+
+    private StmtCode ifStatement(Stmt.If stmt) {
+        Code condition = expression(stmt.condition);
+        StmtCode thenBranch = statement(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            return (interpreter, environment) -> Interpreter.isTruthy(condition.run(interpreter, environment))
+                ? thenBranch.run(interpreter, environment)
+                : null;
+        }
+
+        StmtCode elseBranch = statement(stmt.elseBranch);
+        return (interpreter, environment) -> Interpreter.isTruthy(condition.run(interpreter, environment))
+            ? thenBranch.run(interpreter, environment)
+            : elseBranch.run(interpreter, environment);
+    }
+
+    private Code expression(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal)expr).value;
+            return (interpreter, environment) -> value;
+        } else if (expr instanceof Expr.Grouping) {
+            return expression(((Expr.Grouping)expr).expression);
+        } else if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable)expr;
+            return variable(variable.name, variable.depth, variable.slot);
+        } else if (expr instanceof Expr.This) {
+            Expr.This keyword = (Expr.This)expr;
+            return variable(keyword.keyword, keyword.depth, keyword.slot);
+        } else if (expr instanceof Expr.Assign) {
+            return assignment((Expr.Assign)expr);
+        } else if (expr instanceof Expr.Binary) {
+            return binary((Expr.Binary)expr);
+        } else if (expr instanceof Expr.Logical) {
+            return logical((Expr.Logical)expr);
+        } else if (expr instanceof Expr.Unary) {
+            return unary((Expr.Unary)expr);
+        } else if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary)expr;
+            Code first = expression(ternary.first);
+            Code second = expression(ternary.second);
+            Code third = expression(ternary.third);
+            return (interpreter, environment) -> first.run(interpreter, environment) == Boolean.TRUE
+                ? second.run(interpreter, environment)
+                : third.run(interpreter, environment);
+        } else if (expr instanceof Expr.Call) {
+            return call((Expr.Call)expr, false);
+        } else if (expr instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr;
+            Code object = expression(get.object);
+            return (interpreter, environment) -> interpreter.getProperty(get, object.run(interpreter, environment));
+        } else if (expr instanceof Expr.Set) {
+            return setter((Expr.Set)expr);
+        }
+
+        // Lambdas, super and ?. accesses.
+        return (interpreter, environment) -> interpreter.evaluateIn(expr, environment);
+    }
+
+    private static Code variable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            return (interpreter, environment) -> checkDefined(name, interpreter.globals.getGlobal(name, slot));
+        } else if (depth == 0) {
+            return (interpreter, environment) -> checkDefined(name, environment.getAt(0, slot));
+        }
+        return (interpreter, environment) -> checkDefined(name, environment.getAt(depth, slot));
+    }
+
+    private static Object checkDefined(Token name, Object value) {
+        if (value instanceof Undefined) {
+            throw new RuntimeError(name, "Accessing undefined value.");
+        }
+        return value;
+    }
+
+    private Code assignment(Expr.Assign expr) {
+        Code value = expression(expr.value);
+        if (expr.depth == -1) {
+            return (interpreter, environment) -> {
+                Object result = value.run(interpreter, environment);
+                interpreter.globals.assignGlobal(expr.name, expr.slot, result);
+                return result;
+            };
+        }
+
+        int depth = expr.depth;
+        int slot = expr.slot;
+        return (interpreter, environment) -> {
+            Object result = value.run(interpreter, environment);
+            environment.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    private Code binary(Expr.Binary expr) {
+        if (expr.seenTypes == Interpreter.SEEN_DOUBLE) {
+            if (!Interpreter.isArithmetic(expr.operator.type)) return comparison(expr);
+            if (boxedOperands(expr)) return boxedArithmetic(expr);
+
+            DoubleCode code = arithmetic(expr);
+            return (interpreter, environment) -> box(code, interpreter, environment);
+        }
+
+        Code left = expression(expr.left);
+        Code right = expression(expr.right);
+        if (expr.seenTypes == Interpreter.SEEN_STRING) {
+            return (interpreter, environment) -> {
+                Object a = left.run(interpreter, environment);
+                Object b = right.run(interpreter, environment);
+                if (Strings.isString(a) && Strings.isString(b)) return interpreter.stringBinary(expr, a, b);
+
+                body.valid = false;
+                return interpreter.deoptimize(expr, a, b);
+            };
+        }
+
+        // Mixed types, or an operator the interpreter never reached. The
+        // latter still records what it sees for later compilations.
+        return (interpreter, environment) ->
+            interpreter.deoptimize(expr, left.run(interpreter, environment), right.run(interpreter, environment));
+    }
+
+    // Arithmetic on operands that have always been numbers. If one turns
+    // out not to be and the generic result isn't a number either, it is
+    // passed up through UnexpectedResult like any other operand.
+    //
+    // Operands that are locals or number literals, as in i + 1 or a * b,
+    // are read inline rather than through another closure, since the
+    // calls from one shared lambda body to many different operand closures
+    // are what HotSpot cannot inline.
+    private DoubleCode arithmetic(Expr.Binary expr) {
+        Token operator = expr.operator;
+        if (isLocal(expr.left) && isNumber(expr.right)) {
+            Expr.Variable variable = (Expr.Variable)expr.left;
+            int depth = variable.depth;
+            int slot = variable.slot;
+            double b = (double)((Expr.Literal)expr.right).value;
+            DoubleCode left = doubleExpression(expr.left);
+            DoubleCode right = doubleExpression(expr.right);
+            return (interpreter, environment) -> {
+                Object a = environment.getAt(depth, slot);
+                if (a instanceof Double) return Interpreter.arithmetic(operator, (double)a, b);
+                return arithmetic(interpreter, environment, expr, left, right);
+            };
+        } else if (boxedOperands(expr) || callOperand(expr)) {
+            Code left = expression(expr.left);
+            Code right = expression(expr.right);
+            return (interpreter, environment) -> {
+                Object a = left.run(interpreter, environment);
+                Object b = right.run(interpreter, environment);
+                if (a instanceof Double && b instanceof Double) {
+                    return Interpreter.arithmetic(operator, (double)a, (double)b);
+                }
+                return expectDouble(fail(interpreter, expr, a, b));
+            };
+        }
+
+        DoubleCode left = doubleExpression(expr.left);
+        DoubleCode right = doubleExpression(expr.right);
+        return (interpreter, environment) -> arithmetic(interpreter, environment, expr, left, right);
+    }
+
+    // The same for a parent that wants the boxed result, which saves
+    // unboxing operands only to box the result again.
+    private Code boxedArithmetic(Expr.Binary expr) {
+        Token operator = expr.operator;
+        Code left = expression(expr.left);
+        Code right = expression(expr.right);
+        return (interpreter, environment) -> {
+            Object a = left.run(interpreter, environment);
+            Object b = right.run(interpreter, environment);
+            if (a instanceof Double && b instanceof Double) {
+                return Interpreter.arithmetic(operator, (double)a, (double)b);
+            }
+            return fail(interpreter, expr, a, b);
+        };
+    }
+
+    private double arithmetic(Interpreter interpreter, Environment environment, Expr.Binary expr,
+                              DoubleCode left, DoubleCode right) {
+        double a;
+        try {
+            a = left.run(interpreter, environment);
+        } catch (UnexpectedResult result) {
+            return expectDouble(fail(interpreter, expr, result.value, box(right, interpreter, environment)));
+        }
+
+        double b;
+        try {
+            b = right.run(interpreter, environment);
+        } catch (UnexpectedResult result) {
+            return expectDouble(fail(interpreter, expr, a, result.value));
+        }
+
+        return Interpreter.arithmetic(expr.operator, a, b);
+    }
+
+    private Code comparison(Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+        if (isLocal(expr.left) && isNumber(expr.right)) {
+            Expr.Variable variable = (Expr.Variable)expr.left;
+            int depth = variable.depth;
+            int slot = variable.slot;
+            double b = (double)((Expr.Literal)expr.right).value;
+            DoubleCode left = doubleExpression(expr.left);
+            DoubleCode right = doubleExpression(expr.right);
+            return (interpreter, environment) -> {
+                Object a = environment.getAt(depth, slot);
+                if (a instanceof Double) return compare(operator, (double)a, b);
+                return comparison(interpreter, environment, expr, left, right);
+            };
+        } else if (boxedOperands(expr) || callOperand(expr)) {
+            Code left = expression(expr.left);
+            Code right = expression(expr.right);
+            return (interpreter, environment) -> {
+                Object a = left.run(interpreter, environment);
+                Object b = right.run(interpreter, environment);
+                if (a instanceof Double && b instanceof Double) return compare(operator, (double)a, (double)b);
+                return fail(interpreter, expr, a, b);
+            };
+        }
+
+        DoubleCode left = doubleExpression(expr.left);
+        DoubleCode right = doubleExpression(expr.right);
+        return (interpreter, environment) -> comparison(interpreter, environment, expr, left, right);
+    }
+
+    private Object comparison(Interpreter interpreter, Environment environment, Expr.Binary expr,
+                              DoubleCode left, DoubleCode right) {
+        double a;
+        try {
+            a = left.run(interpreter, environment);
+        } catch (UnexpectedResult result) {
+            return fail(interpreter, expr, result.value, box(right, interpreter, environment));
+        }
+
+        double b;
+        try {
+            b = right.run(interpreter, environment);
+        } catch (UnexpectedResult result) {
+            return fail(interpreter, expr, a, result.value);
+        }
+
+        return compare(expr.operator.type, a, b);
+    }
+
+    private static Object compare(TokenType operator, double a, double b) {
+        switch (operator) {
+            // Same as Double.equals, which the generic path uses.
+            case BANG_EQUAL: return Double.doubleToLongBits(a) != Double.doubleToLongBits(b);
+            case EQUAL_EQUAL: return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+            default: return a;
+        }
+    }
+
+    private static boolean isLocal(Expr expr) {
+        return expr instanceof Expr.Variable && ((Expr.Variable)expr).depth != -1;
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Double;
+    }
+
+    // Whether neither operand computes an unboxed number itself, so both
+    // are best evaluated as ordinary values: variables, calls, property
+    // reads and the like.
+    private static boolean boxedOperands(Expr.Binary expr) {
+        return !isUnboxed(expr.left) && !isUnboxed(expr.right);
+    }
+
+    // Whether an operand is a call, whose result comes back boxed anyway.
+    // Reading both operands boxed keeps the unboxing closures out of the
+    // Java stack between two levels of recursion through the call.
+    private static boolean callOperand(Expr.Binary expr) {
+        return expr.left instanceof Expr.Call || expr.right instanceof Expr.Call;
+    }
+
+    static boolean isUnboxed(Expr expr) {
+        if (isNumber(expr)) return true;
+        if (expr instanceof Expr.Grouping) return isUnboxed(((Expr.Grouping)expr).expression);
+        if (expr instanceof Expr.Unary) return ((Expr.Unary)expr).operator.type == TokenType.MINUS;
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)expr;
+            return binary.seenTypes == Interpreter.SEEN_DOUBLE && Interpreter.isArithmetic(binary.operator.type);
+        }
+        return false;
+    }
+
+    private Object fail(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+        body.valid = false;
+        return interpreter.deoptimize(expr, left, right);
+    }
+
+    private static double expectDouble(Object value) {
+        if (value instanceof Double) return (double)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private static Object box(DoubleCode code, Interpreter interpreter, Environment environment) {
+        try {
+            return code.run(interpreter, environment);
+        } catch (UnexpectedResult result) {
+            return result.value;
+        }
+    }
+
+    // Code for an operand of numeric arithmetic, which throws
+    // UnexpectedResult when the value isn't a number.
+    private DoubleCode doubleExpression(Expr expr) {
+        if (expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Double) {
+            double value = (double)((Expr.Literal)expr).value;
+            return (interpreter, environment) -> value;
+        } else if (expr instanceof Expr.Grouping) {
+            return doubleExpression(((Expr.Grouping)expr).expression);
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)expr;
+            if (binary.seenTypes == Interpreter.SEEN_DOUBLE && Interpreter.isArithmetic(binary.operator.type)) {
+                return arithmetic(binary);
+            }
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary)expr).operator.type == TokenType.MINUS) {
+            Expr.Unary unary = (Expr.Unary)expr;
+            DoubleCode right = doubleExpression(unary.right);
+            return (interpreter, environment) -> {
+                try {
+                    return -right.run(interpreter, environment);
+                } catch (UnexpectedResult result) {
+                    interpreter.checkNumberOperand(unary.operator, result.value);
+                    throw result;
+                }
+            };
+        }
+
+        Code code = expression(expr);
+        return (interpreter, environment) -> expectDouble(code.run(interpreter, environment));
+    }
+
+    private Code logical(Expr.Logical expr) {
+        Code left = expression(expr.left);
+        Code right = expression(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return (interpreter, environment) -> {
+                Object value = left.run(interpreter, environment);
+                return Interpreter.isTruthy(value) ? value : right.run(interpreter, environment);
+            };
+        }
+
+        return (interpreter, environment) -> {
+            Object value = left.run(interpreter, environment);
+            return !Interpreter.isTruthy(value) ? value : right.run(interpreter, environment);
+        };
+    }
+
+    private Code unary(Expr.Unary expr) {
+        Code right = expression(expr.right);
+        if (expr.operator.type == TokenType.BANG) {
+            return (interpreter, environment) -> !Interpreter.isTruthy(right.run(interpreter, environment));
+        }
+
+        return (interpreter, environment) -> {
+            Object value = right.run(interpreter, environment);
+            interpreter.checkNumberOperand(expr.operator, value);
+            return -(double)value;
+        };
+    }
+
+    private Code call(Expr.Call expr, boolean tail) {
+        Code[] arguments = new Code[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = expression(expr.arguments.get(i));
+        }
+
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            Code object = expression(get.object);
+            return (interpreter, environment) -> {
+                Object receiver = object.run(interpreter, environment);
+                MgrCallable method = receiver instanceof MgrInstance
+                    ? ((MgrInstance)receiver).method(get.name, get.cache)
+                    : null;
+                if (method != null) {
+                    return call(interpreter, environment, expr, method, (MgrInstance)receiver, arguments, tail);
+                }
+                Object callee = interpreter.getProperty(get, receiver);
+                return call(interpreter, environment, expr, callee, null, arguments, tail);
+            };
+        } else if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super)expr.callee;
+            return (interpreter, environment) -> {
+                MgrInstance receiver = (MgrInstance)environment.getAt(sup.depth - 1, 0);
+                MgrFunction method = interpreter.findSuperMethod(sup, environment);
+                return call(interpreter, environment, expr, method, receiver, arguments, tail);
+            };
+        }
+
+        Code callee = expression(expr.callee);
+        return (interpreter, environment) ->
+            call(interpreter, environment, expr, callee.run(interpreter, environment), null, arguments, tail);
+    }
+
+    private static Object call(Interpreter interpreter, Environment environment, Expr.Call expr,
+                               Object callee, MgrInstance receiver, Code[] arguments, boolean tail) {
+        Object[] frame = Interpreter.frameFor(expr, callee, receiver);
+        int offset = receiver != null ? 1 : 0;
+        for (int i = 0; i < arguments.length; i++) {
+            frame[offset + i] = arguments[i].run(interpreter, environment);
+        }
+
+        if (tail) return interpreter.tailCall(expr, callee, receiver, frame);
+        return interpreter.call(expr, callee, receiver, frame);
+    }
+
+    private Code setter(Expr.Set expr) {
+        Code object = expression(expr.object);
+        Code value = expression(expr.value);
+        return (interpreter, environment) -> {
+            Object instance = object.run(interpreter, environment);
+            if (!(instance instanceof MgrInstance)) {
+                throw new RuntimeError(expr.name, "Only instances have fields.");
+            }
+
+            Object result = value.run(interpreter, environment);
+            ((MgrInstance)instance).set(expr.name, result, expr.cache);
+            return result;
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package mgr;
+
+import java.util.List;
+
+// The call counter and compiled body of one function or lambda
+// declaration, shared by every closure created from it, or the compiled
+// form of one loop.
+class JitState {
+    private int calls = 0;
+    // Written by whichever thread compiles, and picked up by the others.
+    private volatile Jit.Body compiled = null;
+
+    // Counts a call and returns the compiled body to run, or null to run
+    // it in the interpreter. The caller runs it, so that the stack between
+    // two levels of recursion has no frame from here.
+    Jit.Body code(Interpreter interpreter, List<Stmt> body) {
+        Jit.Body code = compiled;
+        if (code != null && !code.valid) {
+            // A guard failed. Profile again in the interpreter, whose
+            // widened type feedback the next compilation picks up.
+            compiled = code = null;
+            calls = 0;
+        }
+
+        if (code == null && interpreter.jitEnabled && calls >= 0 && ++calls >= Jit.THRESHOLD) {
+            // Bodies without loops are dominated by calls and property
+            // lookups, which the compiled tier does no faster, while the
+            // extra closure per node costs recursive functions more than
+            // the interpreter's dispatch. Those stay interpreted for good.
+            if (Jit.hasLoop(body)) {
+                compiled = code = Jit.compile(body);
+            } else {
+                calls = -1;
+            }
+        }
+
+        return code;
+    }
+
+    // Finishes a loop that has become hot in compiled code.
+    Interpreter.Completion resume(Interpreter interpreter, Stmt loop, Environment environment) {
+        if (compiled == null || !compiled.valid) compiled = Jit.compileLoop(loop);
+        return compiled.execute(interpreter, environment);
+    }
+}
@@ -1,22 +1,41 @@
 package mgr;
 
+import mgr.vm.Prototype;
+import mgr.vm.VM;
+import mgr.vm.VmError;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 public class Mgr {
 	private static final Interpreter interpreter = new Interpreter();
+	private static VM vm = null;
+	private static boolean optimize = true;
+	private static boolean optimizerStats = false;
 	static boolean hadError = false;
-	static boolean hadRuntimeError = false;
+	static volatile boolean hadRuntimeError = false;
 
 	public static void main(String[] args) throws IOException {
+		int first = 0;
+		while (first < args.length && args[first].startsWith("--")) {
+			switch (args[first++]) {
+				case "--vm": vm = new VM(); break;
+				case "--no-opt": optimize = false; break;
+				case "--opt-stats": optimizerStats = true; break;
+				case "--no-jit": interpreter.jitEnabled = false; break;
+				default: usage();
+			}
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+
 		if (args.length > 1) {
-			System.out.println("Usage: mgr [script]");
-			System.exit(64);
+			usage();
 		} else if (args.length == 1) {
 			runFile(args[0]);
 		} else {
@@ -24,6 +43,11 @@ public class Mgr {
 		}
 	}
 
+	private static void usage() {
+		System.out.println("Usage: mgr [--vm] [--no-opt] [--opt-stats] [--no-jit] [script]");
+		System.exit(64);
+	}
+
 	private static void runFile(String path) throws IOException {
 		byte[] bytes = Files.readAllBytes(Paths.get(path));
 		run(new String(bytes, Charset.defaultCharset()));
@@ -55,12 +79,32 @@ public class Mgr {
 		// Stop if there was a syntax error.
 		if (hadError) return;
 
-		var resolver = new Resolver(interpreter);
+		var resolver = new Resolver(interpreter.globals);
 		resolver.resolve(statements);
 
 		// Stop if there was a resolution error.
 		if (hadError) return;
 
+		if (optimize) {
+			var optimizer = new Optimizer();
+			statements = optimizer.optimize(statements);
+			if (optimizerStats) {
+				System.err.println("Optimizer removed " + optimizer.removed() + " nodes.");
+			}
+		}
+
+		if (vm != null) {
+			Prototype script = new Compiler(vm).compile(statements);
+			if (hadError) return;
+
+			try {
+				vm.interpret(script);
+			} catch (VmError error) {
+				runtimeError(error.getMessage(), error.getLine());
+			}
+			return;
+		}
+
 		interpreter.interpret(statements);
 	}
 
@@ -82,7 +126,11 @@ public class Mgr {
 	}
 
 	static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+		runtimeError(error.getMessage(), error.token.line);
+	}
+
+	private static synchronized void runtimeError(String message, int line) {
+		System.err.println(message + "\n[line " + line + "]");
 		hadRuntimeError = true;
 	}
 }
@@ -5,4 +5,15 @@ import java.util.List;
 public interface MgrCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Interpreted calls pass their arguments in an array of at least
+    // frameSize() elements, which the callee may keep as its frame. Natives
+    // only implement the List form, and get plain strings in it.
+    default int frameSize() {
+        return arity();
+    }
+
+    default Object call(Interpreter interpreter, Object[] arguments) {
+        return call(interpreter, Strings.flatten(arguments, arity()));
+    }
 }
@@ -8,6 +8,7 @@ public class MgrClass implements MgrCallable {
     final MgrClass superclass;
     protected final Map<String, MgrFunction> methods;
     protected final Map<String, MgrGetter> getters;
+    final Shape rootShape = new Shape();
 
     protected MgrClass(String name, MgrClass superclass, Map<String, MgrFunction> methods, Map<String, MgrGetter> getters) {
         this.name = name;
@@ -36,16 +37,43 @@ public class MgrClass implements MgrCallable {
         return null;
     }
 
+    // The getter, method or native method a property name resolves to when
+    // the instance has no field of that name.
+    Object findMember(String name) {
+        MgrGetter getter = findGetter(name);
+        if (getter != null) return getter;
+
+        return findMethod(name);
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object[] frame = new Object[Math.max(frameSize(), arguments.size() + 1)];
+        for (int i = 0; i < arguments.size(); i++) {
+            frame[i] = arguments.get(i);
+        }
+        return call(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
         MgrInstance instance = new MgrInstance(this);
         MgrFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            System.arraycopy(arguments, 0, arguments, 1, initializer.arity());
+            arguments[0] = instance;
+            initializer.invoke(interpreter, arguments);
         }
         return instance;
     }
 
+    @Override
+    public int frameSize() {
+        MgrFunction initializer = findMethod("init");
+        if (initializer == null) return 0;
+        return initializer.frameSize();
+    }
+
     @Override
     public int arity() {
         MgrFunction initializer = findMethod("init");
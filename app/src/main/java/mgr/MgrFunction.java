@@ -5,18 +5,27 @@ import java.util.List;
 public class MgrFunction implements MgrCallable {
     private final Stmt.Function declaration;
     private final Environment clojure;
+    private final boolean isMethod;
     private final boolean isInitializer;
+    // The instance a method was bound to, null for plain functions and for
+    // the unbound methods kept by their class.
+    private final MgrInstance receiver;
 
-    MgrFunction(Stmt.Function declaration, Environment clojure, boolean isInitializer) {
+    MgrFunction(Stmt.Function declaration, Environment clojure, boolean isMethod, boolean isInitializer) {
+        this(declaration, clojure, isMethod, isInitializer, null);
+    }
+
+    private MgrFunction(Stmt.Function declaration, Environment clojure, boolean isMethod, boolean isInitializer,
+                        MgrInstance receiver) {
         this.declaration = declaration;
         this.clojure = clojure;
+        this.isMethod = isMethod;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
     }
 
     MgrFunction bind(MgrInstance instance) {
-        Environment environment = new Environment(clojure);
-        environment.define("this", instance);
-        return new MgrFunction(declaration, environment, isInitializer);
+        return new MgrFunction(declaration, clojure, isMethod, isInitializer, instance);
     }
 
     @Override
@@ -24,22 +33,65 @@ public class MgrFunction implements MgrCallable {
         return declaration.params.size();
     }
 
+    @Override
+    public int frameSize() {
+        return declaration.frameSize;
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(clojure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+        Object[] frame = new Object[declaration.frameSize];
+        int offset = receiver != null ? 1 : 0;
+        for (int i = 0; i < arguments.size(); i++) {
+            frame[offset + i] = arguments.get(i);
         }
+        if (receiver != null) frame[0] = receiver;
+        return invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(interpreter, frame(arguments));
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) return clojure.getAt(0, "this");
-            return returnValue.value;
+    // Puts the bound receiver, if any, ahead of the arguments.
+    Object[] frame(Object[] arguments) {
+        if (receiver != null) {
+            System.arraycopy(arguments, 0, arguments, 1, declaration.params.size());
+            arguments[0] = receiver;
         }
+        return arguments;
+    }
+
+    // Runs the function on a frame already holding the receiver, for
+    // methods, and the arguments. Call sites of the form obj.method() use
+    // this directly with the unbound method, so no bound copy is made
+    // unless the method escapes.
+    Object invoke(Interpreter interpreter, Object[] frame) {
+        // The same as run, written out to keep a frame off recursive calls.
+        Environment environment = new Environment(clojure, frame, count());
+        Jit.Body code = declaration.jit.code(interpreter, declaration.body);
+        Object value = code != null
+            ? code.run(interpreter, environment)
+            : interpreter.executeBody(declaration.body, environment);
+        if (isInitializer) return frame[0];
+        return interpreter.finishTailCalls(value);
+    }
+
+    // Like invoke, but leaves a call the body returns in tail position to
+    // the caller.
+    Object run(Interpreter interpreter, Object[] frame) {
+        Environment environment = new Environment(clojure, frame, count());
+        Jit.Body code = declaration.jit.code(interpreter, declaration.body);
+        Object value = code != null
+            ? code.run(interpreter, environment)
+            : interpreter.executeBody(declaration.body, environment);
+        if (isInitializer) return frame[0];
+        return value;
+    }
 
-        if (isInitializer) return clojure.getAt(0, "this");
-        return null;
+    private int count() {
+        return isMethod ? declaration.params.size() + 1 : declaration.params.size();
     }
 
     @Override
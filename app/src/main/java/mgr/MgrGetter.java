@@ -5,16 +5,20 @@ import java.util.List;
 public class MgrGetter implements MgrCallable {
     private final Stmt.Getter declaration;
     private final Environment clojure;
+    private final MgrInstance receiver;
 
     MgrGetter(Stmt.Getter declaration, Environment clojure) {
+        this(declaration, clojure, null);
+    }
+
+    private MgrGetter(Stmt.Getter declaration, Environment clojure, MgrInstance receiver) {
         this.declaration = declaration;
         this.clojure = clojure;
+        this.receiver = receiver;
     }
 
     MgrGetter bind(MgrInstance instance) {
-        Environment environment = new Environment(clojure);
-        environment.define("this", instance);
-        return new MgrGetter(declaration, environment);
+        return new MgrGetter(declaration, clojure, instance);
     }
 
     @Override
@@ -24,12 +28,12 @@ public class MgrGetter implements MgrCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        return get(interpreter);
+    }
+
+    Object get(Interpreter interpreter) {
         Environment environment = new Environment(clojure);
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
-        }
-        return null;
+        if (receiver != null) environment.define(receiver);
+        return interpreter.finishTailCalls(interpreter.executeBody(declaration.body, environment));
     }
 }
@@ -1,38 +1,123 @@
 package mgr;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class MgrInstance {
     private final MgrClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    // Tasks on other threads can share an instance. A shape is published
+    // after the values array grown for it, and the array never shrinks, so
+    // the index of a field in the shape a thread reads is in bounds of the
+    // array it reads after.
+    private volatile Shape shape;
+    private Object[] values;
 
     public MgrInstance(MgrClass klass) {
         this.klass = klass;
+        this.shape = klass.rootShape;
+        this.values = new Object[0];
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int index = shape.indexOf(name.lexeme);
+        return property(name, index, index == -1 ? klass.findMember(name.lexeme) : null);
+    }
+
+    Object get(Token name, InlineCache cache) {
+        Shape shape = this.shape;
+        int entry = cache.find(shape);
+        if (entry != -1) return property(name, cache.index(entry), cache.member(entry));
+
+        int index = shape.indexOf(name.lexeme);
+        Object member = index == -1 ? klass.findMember(name.lexeme) : null;
+        if (index != -1 || member != null) cache.add(shape, index, member);
+        return property(name, index, member);
+    }
+
+    // Resolves a property that is about to be called. Returns the class's
+    // unbound method, interpreted or native, when the name is one, so the
+    // caller can invoke it with this instance as receiver, and null when
+    // get should be used instead.
+    MgrCallable method(Token name, InlineCache cache) {
+        Shape shape = this.shape;
+        Object member;
+        int entry = cache.find(shape);
+        if (entry != -1) {
+            if (cache.index(entry) != -1) return null;
+            member = cache.member(entry);
+        } else {
+            if (shape.indexOf(name.lexeme) != -1) return null;
+            member = klass.findMember(name.lexeme);
+            if (member != null) cache.add(shape, -1, member);
         }
 
-        MgrGetter getter = klass.findGetter(name.lexeme);
-        if (getter != null) return getter.bind(this);
+        if (member instanceof MgrFunction || member instanceof NativeMethod) return (MgrCallable)member;
+        return null;
+    }
 
-        MgrFunction method = klass.findMethod(name.lexeme);
-        if (method != null) return method.bind(this);
+    private Object property(Token name, int index, Object member) {
+        if (index != -1) return values[index];
+        if (member instanceof MgrGetter) return ((MgrGetter)member).bind(this);
+        if (member instanceof MgrFunction) return ((MgrFunction)member).bind(this);
+        if (member instanceof NativeMethod) return ((NativeMethod)member).bind(this);
+        if (member != null) return member;
 
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    public MgrCallable findNativeMethod(String name) {
         if (klass instanceof MgrNativeClass) {
-            MgrNativeClass nativeClass = (MgrNativeClass)klass;
-            MgrCallable nativeMethod = nativeClass.findNativeMethod(name.lexeme);
-            if (nativeMethod != null) return nativeMethod;
+            return ((MgrNativeClass)klass).findNativeMethod(name);
         }
 
-        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        return null;
     }
 
     protected void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        while (true) {
+            Shape shape = this.shape;
+            int index = shape.indexOf(name.lexeme);
+            if (index != -1 || addField(shape, shape.withField(name.lexeme))) {
+                if (index == -1) index = shape.size;
+                values[index] = value;
+                return;
+            }
+        }
+    }
+
+    void set(Token name, Object value, InlineCache cache) {
+        Shape shape = this.shape;
+        int entry = cache.find(shape);
+        if (entry != -1) {
+            Shape next = (Shape)cache.member(entry);
+            if (next == null || addField(shape, next)) {
+                values[cache.index(entry)] = value;
+                return;
+            }
+        } else {
+            int index = shape.indexOf(name.lexeme);
+            Shape next = index == -1 ? shape.withField(name.lexeme) : null;
+            if (next == null || addField(shape, next)) {
+                if (index == -1) index = shape.size;
+                cache.add(shape, index, next);
+                values[index] = value;
+                return;
+            }
+        }
+
+        // Another thread added a field in the meantime.
+        set(name, value);
+    }
+
+    // Moves from one shape to the next, with one more field, unless another
+    // thread has moved this instance on already.
+    private synchronized boolean addField(Shape from, Shape next) {
+        if (shape != from) return false;
+
+        if (values.length < next.size) {
+            values = Arrays.copyOf(values, Math.max(4, values.length * 2));
+        }
+        shape = next;
+        return true;
     }
 
     @Override
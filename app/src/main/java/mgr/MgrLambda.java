@@ -16,19 +16,38 @@ public class MgrLambda implements MgrCallable {
         return expression.params.size();
     }
 
+    @Override
+    public int frameSize() {
+        return expression.frameSize;
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(clojure);
-        for (int i = 0; i < expression.params.size(); i++) {
-            environment.define(expression.params.get(i).lexeme, arguments.get(i));
+        Object[] frame = new Object[expression.frameSize];
+        for (int i = 0; i < arguments.size(); i++) {
+            frame[i] = arguments.get(i);
         }
 
-        try {
-            interpreter.executeBlock(expression.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
-        }
-        return null;
+        return call(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        // The same as run, written out to keep a frame off recursive calls.
+        Environment environment = new Environment(clojure, arguments, expression.params.size());
+        Jit.Body code = expression.jit.code(interpreter, expression.body);
+        Object value = code != null
+            ? code.run(interpreter, environment)
+            : interpreter.executeBody(expression.body, environment);
+        return interpreter.finishTailCalls(value);
+    }
+
+    // Runs the body without making a call it returns in tail position.
+    Object run(Interpreter interpreter, Object[] arguments) {
+        Environment environment = new Environment(clojure, arguments, expression.params.size());
+        Jit.Body code = expression.jit.code(interpreter, expression.body);
+        if (code != null) return code.run(interpreter, environment);
+        return interpreter.executeBody(expression.body, environment);
     }
 
     @Override
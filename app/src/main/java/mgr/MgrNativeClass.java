@@ -22,11 +22,30 @@ public class MgrNativeClass extends MgrClass {
         return nativeMethods.get(name);
     }
 
+    @Override
+    Object findMember(String name) {
+        Object member = super.findMember(name);
+        if (member != null) return member;
+
+        return findNativeMethod(name);
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         return new MgrInstance(this);
     }
 
+    // Native constructors only implement the List form.
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return call(interpreter, Strings.flatten(arguments, arity()));
+    }
+
+    @Override
+    public int frameSize() {
+        return arity();
+    }
+
     @Override
     public int arity() {
         return this.arity;
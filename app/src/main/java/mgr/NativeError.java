@@ -0,0 +1,9 @@
+package mgr;
+
+// Thrown by a native function to report a runtime error, which the
+// interpreter attributes to the line of the failing call.
+public class NativeError extends RuntimeException {
+    public NativeError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,68 @@
+package mgr;
+
+import java.util.List;
+
+// A method of a native class that is handed the instance it was called on,
+// so native instances can carry state of their own. Like an interpreted
+// method it runs on a frame with the receiver in slot 0 and the arguments
+// after it: obj.method() calls pass the unbound method and the receiver,
+// and a method taken as a value is bound to its instance first.
+public final class NativeMethod implements MgrCallable {
+    public interface Body {
+        Object invoke(Interpreter interpreter, Object[] frame);
+    }
+
+    private final int arity;
+    private final Body body;
+    private final MgrInstance receiver;
+
+    public NativeMethod(int arity, Body body) {
+        this(arity, body, null);
+    }
+
+    private NativeMethod(int arity, Body body, MgrInstance receiver) {
+        this.arity = arity;
+        this.body = body;
+        this.receiver = receiver;
+    }
+
+    public NativeMethod bind(MgrInstance instance) {
+        return new NativeMethod(arity, body, instance);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public int frameSize() {
+        return arity + 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object[] frame = new Object[arity + 1];
+        for (int i = 0; i < arity; i++) {
+            frame[i + 1] = arguments.get(i);
+        }
+        frame[0] = receiver;
+        return body.invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        System.arraycopy(arguments, 0, arguments, 1, arity);
+        arguments[0] = receiver;
+        return body.invoke(interpreter, arguments);
+    }
+
+    Object invoke(Interpreter interpreter, Object[] frame) {
+        return body.invoke(interpreter, frame);
+    }
+
+    @Override
+    public String toString() {
+        return "<native method>";
+    }
+}
@@ -0,0 +1,40 @@
+package mgr;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Runs a sequence of rewriting passes over the resolved program before it
+// is executed or compiled, and keeps track of how much of the tree they
+// removed.
+class Optimizer {
+    private final List<AstRewriter> passes;
+    private int removed = 0;
+
+    Optimizer() {
+        this(Arrays.asList(new ConstantFolder(), new DeadCodeEliminator()));
+    }
+
+    Optimizer(List<AstRewriter> passes) {
+        this.passes = passes;
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        int before = count(statements);
+        for (AstRewriter pass : passes) {
+            statements = pass.rewrite(statements);
+        }
+        removed += before - count(statements);
+        return statements;
+    }
+
+    // The number of nodes removed by every optimize call so far.
+    int removed() {
+        return removed;
+    }
+
+    private static int count(List<Stmt> statements) {
+        AstRewriter counter = new AstRewriter();
+        counter.rewrite(statements);
+        return counter.visited;
+    }
+}
@@ -126,18 +126,14 @@ class Parser {
             loopDepth++;
             Stmt body = statement();
 
-            if (increment != null) {
-                body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
-            }
+            // The body runs in a scope of its own each iteration, so a block
+            // body needs no further one.
+            List<Stmt> statements = body instanceof Stmt.Block
+                ? ((Stmt.Block)body).statements
+                : Arrays.asList(body);
 
             if (condition == null) condition = new Expr.Literal(true);
-            body = new Stmt.While(condition, body);
-
-            if (initializer != null) {
-                body = new Stmt.Block(Arrays.asList(initializer, body));
-            }
-
-            return body;
+            return new Stmt.For(initializer, condition, increment, statements);
         } finally {
             loopDepth--;
         }
@@ -209,7 +205,16 @@ class Parser {
     private Stmt.Getter getter() {
         Token name = previous();
         consume(LEFT_BRACE, "Expect '{' before getter body.");
-        List<Stmt> body = block();
+
+        // As in finishFunction, a break can't leave the getter.
+        int enclosingLoopDepth = loopDepth;
+        List<Stmt> body;
+        try {
+            loopDepth = 0;
+            body = block();
+        } finally {
+            loopDepth = enclosingLoopDepth;
+        }
         return new Stmt.Getter(name, body);
     }
 
@@ -218,7 +223,7 @@ class Parser {
         if (kind.equals("method")) {
             name = previous();
         } else {
-            consume(IDENTIFIER, "Expect " + kind + " name.");
+            name = consume(IDENTIFIER, "Expect " + kind + " name.");
         }
         consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
@@ -240,7 +245,15 @@ class Parser {
         consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
         consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        return block();
+
+        // A break can't leave the function to end a loop around it.
+        int enclosingLoopDepth = loopDepth;
+        try {
+            loopDepth = 0;
+            return block();
+        } finally {
+            loopDepth = enclosingLoopDepth;
+        }
     }
 
     private List<Stmt> block() {
@@ -17,20 +17,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         CLASS,
         SUBCLASS
     }
-    private final Interpreter interpreter;
+    private final Environment globals;
     private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Integer>> slots = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
+    // Functions, getters and classes resolved so far, each of which keeps
+    // the environment it is declared in.
+    private int closures = 0;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    Resolver(Environment globals) {
+        this.globals = globals;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        beginScope();
+        // A block that declares nothing gets no scope, so the interpreter
+        // runs it in the enclosing environment and the depths resolved
+        // inside it skip the block.
+        stmt.scoped = declaresAny(stmt.statements);
+        if (stmt.scoped) beginScope();
         resolve(stmt.statements);
-        endScope();
+        if (stmt.scoped) endScope();
         return null;
     }
 
@@ -38,6 +46,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
+        closures++;
 
         declare(stmt.name);
         define(stmt.name);
@@ -53,14 +62,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            defineSynthetic("super");
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-
         for (Stmt.Getter getter : stmt.getters) {
-            resolveGetter(getter);
+            resolveGetter(getter, true);
         }
 
         for (Stmt.Function method : stmt.methods) {
@@ -71,8 +77,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolveFunction(method, declaration);
         }
 
-        endScope();
-
         if (stmt.superclass != null) endScope();
 
         currentClass = enclosingClass;
@@ -99,7 +103,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         declare(stmt.name);
         define(stmt.name);
 
-        resolveGetter(stmt);
+        resolveGetter(stmt, false);
         return null;
     }
 
@@ -127,6 +131,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             if (currentFunction == FunctionType.INITIALIZER) {
                 Mgr.error(stmt.keyword, "Can't return a value from an initializer.");
             }
+            // The caller makes a returned call itself, so calls in tail
+            // position don't grow the Java stack.
+            stmt.tail = stmt.value instanceof Expr.Call;
             resolve(stmt.value);
         }
 
@@ -150,6 +157,27 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        beginScope();
+        if (stmt.initializer != null) resolve(stmt.initializer);
+        resolve(stmt.condition);
+        if (stmt.increment != null) resolve(stmt.increment);
+
+        // A body that declares nothing able to hold on to its scope can
+        // run every iteration in the same environment, and a body that
+        // declares nothing at all needs none.
+        int enclosingClosures = closures;
+        stmt.scoped = declaresAny(stmt.body);
+        if (stmt.scoped) beginScope();
+        resolve(stmt.body);
+        if (stmt.scoped) endScope();
+        stmt.captures = closures != enclosingClosures;
+
+        endScope();
+        return null;
+    }
+
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
         return null;
@@ -158,7 +186,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        int scope = resolveLocal(expr.name);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = slots.get(scope).get(expr.name.lexeme);
+        } else {
+            expr.slot = globals.indexOf(expr.name.lexeme);
+        }
         return null;
     }
 
@@ -205,7 +239,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Mgr.error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        int scope = resolveLocal(expr.keyword);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = slots.get(scope).get(expr.keyword.lexeme);
+        }
         return null;
     }
 
@@ -216,7 +254,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         } else if (currentClass != ClassType.SUBCLASS) {
             Mgr.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
-        resolveLocal(expr, expr.keyword);
+        int scope = resolveLocal(expr.keyword);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+        }
         return null;
     }
 
@@ -258,7 +299,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Mgr.error(expr.name, "Can't read local variable in its own initializer.");
         }
 
-        resolveLocal(expr, expr.name);
+        int scope = resolveLocal(expr.name);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = slots.get(scope).get(expr.name.lexeme);
+        } else {
+            expr.slot = globals.indexOf(expr.name.lexeme);
+        }
         return null;
     }
 
@@ -266,15 +313,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitLambdaExpr(Expr.Lambda expr) {
         Stmt.Function lambdaFunction = new Stmt.Function(null, expr.params, expr.body);
         resolveFunction(lambdaFunction, FunctionType.FUNCTION);
+        expr.frameSize = lambdaFunction.frameSize;
         return null;
     }
 
+    private static boolean declaresAny(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var || statement instanceof Stmt.Function
+                    || statement instanceof Stmt.Getter || statement instanceof Stmt.Class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void beginScope() {
         scopes.push(new HashMap<>());
+        slots.push(new HashMap<>());
     }
 
     private void endScope() {
         scopes.pop();
+        slots.pop();
     }
 
     private void declare(Token name) {
@@ -285,6 +345,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
 
         scope.put(name.lexeme, false);
+        slots.peek().put(name.lexeme, slots.peek().size());
+    }
+
+    private void defineSynthetic(String name) {
+        scopes.peek().put(name, true);
+        slots.peek().put(name, slots.peek().size());
     }
 
     private void define(Token name) {
@@ -306,36 +372,48 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void resolveGetter(Stmt.Getter getter) {
+    private void resolveGetter(Stmt.Getter getter, boolean isMethod) {
+        closures++;
         FunctionType enclosingFunction = currentFunction;
         currentFunction = FunctionType.METHOD;
         beginScope();
+        if (isMethod) defineSynthetic("this");
         resolve(getter.body);
         endScope();
         currentFunction = enclosingFunction;
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
+        closures++;
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
 
         beginScope();
+        // Methods take their receiver in slot 0 of their own frame, ahead of
+        // the parameters, so calling one needs no separate 'this' scope.
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            defineSynthetic("this");
+        }
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
+        function.frameSize = slots.peek().size();
         endScope();
 
         currentFunction = enclosingFunction;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    // Returns the index of the innermost scope declaring the name, or -1 if
+    // the name refers to a global, whose slot then comes from the global
+    // environment.
+    private int resolveLocal(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+                return i;
             }
         }
+        return -1;
     }
 }
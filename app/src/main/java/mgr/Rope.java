@@ -0,0 +1,93 @@
+package mgr;
+
+// A string value built by concatenation. Appending to the newest rope of a
+// builder appends in place, so a loop doing s = s + piece copies each piece
+// once instead of the whole string on every iteration, and older ropes of
+// the same builder stay valid as prefixes of it. Anything that needs a
+// String, like printing or a native, flattens the rope, and the flat
+// String is kept. Tasks on other threads can hold ropes of the same
+// builder, so it is only used under its own lock.
+final class Rope implements CharSequence {
+    // Results shorter than this are concatenated as plain strings, for
+    // which copying is cheaper than a builder.
+    private static final int MIN_LENGTH = 256;
+
+    private final StringBuilder builder;
+    private final int length;
+    private String flat = null;
+    private int hash = 0;
+
+    private Rope(StringBuilder builder) {
+        this.builder = builder;
+        this.length = builder.length();
+    }
+
+    // Concatenates a string value with more text.
+    static Object concat(Object left, String right) {
+        if (left instanceof Rope) return ((Rope)left).append(right);
+
+        String text = left.toString();
+        int length = text.length() + right.length();
+        if (length < MIN_LENGTH) return text.concat(right);
+
+        return new Rope(new StringBuilder(length * 2).append(text).append(right));
+    }
+
+    private Rope append(String piece) {
+        synchronized (builder) {
+            if (length == builder.length()) {
+                builder.append(piece);
+                return new Rope(builder);
+            }
+
+            // A longer rope was built from this one already, so branch off
+            // with a builder of our own.
+            int capacity = (length + piece.length()) * 2;
+            return new Rope(new StringBuilder(capacity).append(builder, 0, length).append(piece));
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) throw new IndexOutOfBoundsException(index);
+        synchronized (builder) {
+            return builder.charAt(index);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // Hashes like the String with the same characters, computed over the
+    // builder so looking a rope up in a map doesn't flatten it.
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            synchronized (builder) {
+                for (int i = 0; i < length; i++) h = 31 * h + builder.charAt(i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        String flat = this.flat;
+        if (flat == null) {
+            synchronized (builder) {
+                flat = builder.substring(0, length);
+            }
+            this.flat = flat;
+        }
+        return flat;
+    }
+}
@@ -0,0 +1,42 @@
+package mgr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The field layout of an instance. Every class has a root shape without
+// fields and adding a field moves an instance to the shape reached through
+// that field's transition, so instances of one class that got the same
+// fields in the same order share a shape. Shapes never change, which lets
+// inline caches key lookups on shape identity. Instances on different
+// threads can add the same field at once, so transitions are made under
+// the shape's lock.
+class Shape {
+    private final Map<String, Integer> indices;
+    private final Map<String, Shape> transitions = new HashMap<>();
+    final int size;
+
+    Shape() {
+        indices = new HashMap<>();
+        size = 0;
+    }
+
+    private Shape(Shape parent, String name) {
+        indices = new HashMap<>(parent.indices);
+        indices.put(name, parent.size);
+        size = parent.size + 1;
+    }
+
+    int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index != null ? index : -1;
+    }
+
+    synchronized Shape withField(String name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -14,11 +14,13 @@ abstract class Stmt {
 		R visitReturnStmt(Return stmt);
 		R visitVarStmt(Var stmt);
 		R visitWhileStmt(While stmt);
+		R visitForStmt(For stmt);
 		R visitBreakStmt(Break stmt);
 	}
 
 	static class Block extends Stmt {
 		final List<Stmt> statements;
+		boolean scoped;
 		Block(List<Stmt> statements) {
 			this.statements = statements;
 		}
@@ -63,6 +65,8 @@ abstract class Stmt {
 		final Token name;
 		final List<Token> params;
 		final List<Stmt> body;
+		int frameSize;
+		JitState jit = new JitState();
 		Function(Token name, List<Token> params, List<Stmt> body) {
 			this.name = name;
 			this.params = params;
@@ -120,6 +124,7 @@ abstract class Stmt {
 	static class Return extends Stmt {
 		final Token keyword;
 		final Expr value;
+		boolean tail;
 		Return(Token keyword, Expr value) {
 			this.keyword = keyword;
 			this.value = value;
@@ -148,6 +153,7 @@ abstract class Stmt {
 	static class While extends Stmt {
 		final Expr condition;
 		final Stmt body;
+		JitState jit = new JitState();
 		While(Expr condition, Stmt body) {
 			this.condition = condition;
 			this.body = body;
@@ -159,6 +165,27 @@ abstract class Stmt {
 		}
 	}
 
+	static class For extends Stmt {
+		final Stmt initializer;
+		final Expr condition;
+		final Expr increment;
+		final List<Stmt> body;
+		boolean scoped;
+		boolean captures;
+		JitState jit = new JitState();
+		For(Stmt initializer, Expr condition, Expr increment, List<Stmt> body) {
+			this.initializer = initializer;
+			this.condition = condition;
+			this.increment = increment;
+			this.body = body;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitForStmt(this);
+		}
+	}
+
 	static class Break extends Stmt {
 		final Token token;
 		Break(Token token) {
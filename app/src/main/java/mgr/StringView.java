@@ -0,0 +1,63 @@
+package mgr;
+
+// A string value that is a range of another string, made by string natives
+// like substring and trim so they don't copy. A view keeps the whole of
+// the string it looks into alive.
+public final class StringView implements CharSequence {
+    private final String base;
+    private final int start;
+    private final int end;
+    private String flat = null;
+    private int hash = 0;
+
+    private StringView(String base, int start, int end) {
+        this.base = base;
+        this.start = start;
+        this.end = end;
+    }
+
+    // The characters from start up to end of any string value. Views of
+    // views look straight into the original string.
+    public static CharSequence of(CharSequence text, int start, int end) {
+        if (start == 0 && end == text.length()) return text;
+        if (text instanceof StringView) {
+            StringView view = (StringView)text;
+            return new StringView(view.base, view.start + start, view.start + end);
+        }
+        return new StringView(text.toString(), start, end);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(index);
+        return base.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return of(this, start, end);
+    }
+
+    // The hash of the String with the same characters, computed in place
+    // so looking a view up in a map doesn't copy it.
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = start; i < end; i++) h = 31 * h + base.charAt(i);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = base.substring(start, end);
+        return flat;
+    }
+}
@@ -0,0 +1,49 @@
+package mgr;
+
+import java.util.Arrays;
+import java.util.List;
+
+// String values come in three forms, all CharSequences: Strings, Ropes
+// built by concatenation and StringViews into another string, made by the
+// string natives. Whatever compares or hands strings on goes through here
+// so the forms are interchangeable.
+final class Strings {
+    private Strings() {
+    }
+
+    static boolean isString(Object value) {
+        return value instanceof CharSequence;
+    }
+
+    // Replaces a rope or view by a plain String, leaving other values alone.
+    static Object flatten(Object value) {
+        return value instanceof CharSequence ? value.toString() : value;
+    }
+
+    // The List form of a native call's arguments, flattened so natives only
+    // ever see plain strings.
+    static List<Object> flatten(Object[] arguments, int count) {
+        for (int i = 0; i < count; i++) {
+            arguments[i] = flatten(arguments[i]);
+        }
+        return Arrays.asList(arguments).subList(0, count);
+    }
+
+    static boolean equal(Object a, Object b) {
+        if (a instanceof String && b instanceof String) return a.equals(b);
+        if (!(a instanceof CharSequence) || !(b instanceof CharSequence)) return a.equals(b);
+
+        CharSequence left = (CharSequence)a;
+        CharSequence right = (CharSequence)b;
+        return left.length() == right.length() && CharSequence.compare(left, right) == 0;
+    }
+
+    static int compare(Object a, Object b) {
+        if (a instanceof String && b instanceof String) return ((String)a).compareTo((String)b);
+        return CharSequence.compare((CharSequence)a, (CharSequence)b);
+    }
+
+    static Object concat(Object left, String right) {
+        return Rope.concat(left, right);
+    }
+}
@@ -0,0 +1,12 @@
+package mgr;
+
+// Thrown by Interpreter.evaluateDouble when an expression specialized to
+// numbers produces something else, carrying the value it did produce.
+class UnexpectedResult extends RuntimeException {
+    final Object value;
+
+    UnexpectedResult(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
@@ -0,0 +1,16 @@
+package mgr.vm;
+
+class BoundMethod {
+    final Object receiver;
+    final Closure method;
+
+    BoundMethod(Object receiver, Closure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
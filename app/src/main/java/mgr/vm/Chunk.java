@@ -0,0 +1,141 @@
+package mgr.vm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    Object[] constants = new Object[16];
+    private int count = 0;
+    private int constantCount = 0;
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    public void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte)b;
+        lines[count] = line;
+        count++;
+    }
+
+    public void patch(int offset, int b) {
+        code[offset] = (byte)b;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // Highest operand stack use of the code, relative to the frame base,
+    // found by following every path through it. The VM reserves this much
+    // when entering a frame so pushes in the dispatch loop need no checks.
+    int maxStack(int entryHeight) {
+        int[] heights = new int[count];
+        Arrays.fill(heights, -1);
+        Deque<Integer> pending = new ArrayDeque<>();
+        heights[0] = entryHeight;
+        pending.push(0);
+        int max = entryHeight;
+
+        while (!pending.isEmpty()) {
+            int ip = pending.pop();
+            int height = heights[ip];
+            while (true) {
+                max = Math.max(max, height);
+                int next = ip + 1;
+                int jump = -1;
+                boolean fallsThrough = true;
+                switch (code[ip]) {
+                    case OpCode.CONSTANT:
+                    case OpCode.GET_GLOBAL:
+                    case OpCode.CLASS:
+                        height++; next += 2; break;
+                    case OpCode.NIL:
+                    case OpCode.TRUE:
+                    case OpCode.FALSE:
+                    case OpCode.UNDEFINED:
+                        height++; break;
+                    case OpCode.GET_LOCAL:
+                    case OpCode.GET_UPVALUE:
+                        height++; next += 1; break;
+                    case OpCode.SET_LOCAL:
+                    case OpCode.SET_UPVALUE:
+                        next += 1; break;
+                    case OpCode.SET_GLOBAL:
+                    case OpCode.GET_PROPERTY:
+                        next += 2; break;
+                    case OpCode.DEFINE_GLOBAL:
+                    case OpCode.SET_PROPERTY:
+                    case OpCode.GET_SUPER:
+                    case OpCode.METHOD:
+                    case OpCode.GETTER:
+                        height--; next += 2; break;
+                    case OpCode.NOT:
+                    case OpCode.NEGATE:
+                        break;
+                    case OpCode.JUMP:
+                        jump = ip + 3 + readShort(ip + 1); fallsThrough = false; break;
+                    case OpCode.JUMP_IF_FALSE:
+                    case OpCode.JUMP_IF_NOT_TRUE:
+                    case OpCode.JUMP_IF_NIL:
+                        jump = ip + 3 + readShort(ip + 1); next += 2; break;
+                    case OpCode.LOOP:
+                        jump = ip + 3 - readShort(ip + 1); fallsThrough = false; break;
+                    case OpCode.CALL:
+                    case OpCode.TAIL_CALL:
+                        height -= code[ip + 1] & 0xff; next += 1; break;
+                    case OpCode.INVOKE:
+                    case OpCode.TAIL_INVOKE:
+                        height -= code[ip + 3] & 0xff; next += 3; break;
+                    case OpCode.CLOSURE:
+                        height++;
+                        next += 2 + 2 * ((Prototype)constants[readShort(ip + 1)]).upvalueCount;
+                        break;
+                    case OpCode.RETURN:
+                        fallsThrough = false; break;
+                    default:
+                        // POP, CLOSE_UPVALUE, INHERIT, PRINT and the binary operators.
+                        height--; break;
+                }
+
+                if (jump != -1 && heights[jump] == -1) {
+                    heights[jump] = height;
+                    pending.push(jump);
+                }
+                if (!fallsThrough || next >= count || heights[next] != -1) break;
+                ip = next;
+                heights[ip] = height;
+            }
+        }
+
+        return max;
+    }
+
+    private int readShort(int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    // Numbers, strings and names are interned so repeated uses of the same
+    // literal or property share one constant slot.
+    public int addConstant(Object value) {
+        if (!(value instanceof Prototype)) {
+            Integer index = constantIndices.get(value);
+            if (index != null) return index;
+        }
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        if (!(value instanceof Prototype)) {
+            constantIndices.put(value, constantCount);
+        }
+        return constantCount++;
+    }
+}
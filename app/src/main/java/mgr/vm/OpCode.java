@@ -0,0 +1,59 @@
+package mgr.vm;
+
+// Instruction set of the VM. Operands follow the opcode in the code array:
+// "const" is a two byte constant pool index, "global" a two byte global
+// slot from VM.globalIndex, "slot", "upvalue" and "argc" are single bytes
+// and "offset" is a two byte jump distance.
+public final class OpCode {
+    public static final byte CONSTANT = 0;       // const
+    public static final byte NIL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte UNDEFINED = 4;
+    public static final byte POP = 5;
+    public static final byte GET_LOCAL = 6;      // slot
+    public static final byte SET_LOCAL = 7;      // slot
+    public static final byte GET_GLOBAL = 8;     // global
+    public static final byte DEFINE_GLOBAL = 9;  // global
+    public static final byte SET_GLOBAL = 10;    // global
+    public static final byte GET_UPVALUE = 11;   // upvalue
+    public static final byte SET_UPVALUE = 12;   // upvalue
+    public static final byte GET_PROPERTY = 13;  // const
+    public static final byte SET_PROPERTY = 14;  // const
+    public static final byte GET_SUPER = 15;     // const
+    public static final byte EQUAL = 16;
+    public static final byte NOT_EQUAL = 17;
+    public static final byte GREATER = 18;
+    public static final byte GREATER_EQUAL = 19;
+    public static final byte LESS = 20;
+    public static final byte LESS_EQUAL = 21;
+    public static final byte ADD = 22;
+    public static final byte SUBTRACT = 23;
+    public static final byte MULTIPLY = 24;
+    public static final byte DIVIDE = 25;
+    public static final byte ELVIS = 26;
+    public static final byte NOT = 27;
+    public static final byte NEGATE = 28;
+    public static final byte PRINT = 29;
+    public static final byte JUMP = 30;          // offset
+    public static final byte JUMP_IF_FALSE = 31; // offset
+    public static final byte JUMP_IF_NOT_TRUE = 32; // offset
+    public static final byte JUMP_IF_NIL = 33;   // offset
+    public static final byte LOOP = 34;          // offset
+    public static final byte CALL = 35;          // argc
+    public static final byte INVOKE = 36;        // const, argc
+    public static final byte CLOSURE = 37;       // const, then (isLocal, index) per upvalue
+    public static final byte CLOSE_UPVALUE = 38;
+    public static final byte RETURN = 39;
+    public static final byte CLASS = 40;         // const
+    public static final byte INHERIT = 41;
+    public static final byte METHOD = 42;        // const
+    public static final byte GETTER = 43;        // const
+    // CALL and INVOKE for a call a function returns. The callee replaces
+    // the caller's frame when it is a closure, and a RETURN follows for
+    // any other callee.
+    public static final byte TAIL_CALL = 44;     // argc
+    public static final byte TAIL_INVOKE = 45;   // const, argc
+
+    private OpCode() { }
+}
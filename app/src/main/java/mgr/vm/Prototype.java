@@ -0,0 +1,37 @@
+package mgr.vm;
+
+public class Prototype {
+    public enum Kind {
+        SCRIPT,
+        FUNCTION,
+        LAMBDA,
+        METHOD,
+        INITIALIZER,
+        GETTER
+    }
+
+    final String name;
+    final Kind kind;
+    final int arity;
+    final int upvalueCount;
+    final Chunk chunk;
+    final int maxStack;
+
+    public Prototype(String name, Kind kind, int arity, int upvalueCount, Chunk chunk) {
+        this.name = name;
+        this.kind = kind;
+        this.arity = arity;
+        this.upvalueCount = upvalueCount;
+        this.chunk = chunk;
+        // The callee or receiver in slot 0 and the arguments are on the
+        // stack on entry.
+        this.maxStack = chunk.maxStack(arity + 1);
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.LAMBDA) return "<lambda>";
+        if (kind == Kind.SCRIPT) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
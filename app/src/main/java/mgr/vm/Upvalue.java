@@ -0,0 +1,15 @@
+package mgr.vm;
+
+// A variable captured by a closure. While the declaring frame is live the
+// value stays on the VM stack at slot, afterwards it is moved into closed.
+class Upvalue {
+    final int slot;
+    Object closed;
+    boolean isOpen = true;
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
@@ -0,0 +1,688 @@
+package mgr.vm;
+
+import mgr.MgrCallable;
+import mgr.MgrInstance;
+import mgr.NativeError;
+import mgr.NativeMethod;
+import mgr.Undefined;
+import mgr_native.Natives;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class VM {
+    private static final int FRAMES_MAX = 1 << 16;
+    private static final Object UNDEFINED = Undefined.getInstance();
+
+    private static class CallFrame {
+        Closure closure;
+        int ip;
+        int base;
+    }
+
+    // The value of a global slot whose name has been compiled but not yet
+    // defined.
+    private static final Object ABSENT = new Object();
+
+    // Globals are numbered the way the resolver numbers the interpreter's:
+    // every name the compiler asks about gets a slot of its own, once, so
+    // global accesses are array accesses and the slot stays valid across
+    // scripts compiled for the same VM, as at the prompt.
+    private final Map<String, Integer> globalIndices = new HashMap<>();
+    private String[] globalNames = new String[64];
+    private Object[] globals = new Object[64];
+    private int globalCount = 0;
+    private Object[] stack = new Object[1024];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private Upvalue openUpvalues;
+
+    public VM() {
+        Arrays.fill(globals, ABSENT);
+        for (Map.Entry<String, Object> entry : Natives.create().entrySet()) {
+            globals[globalIndex(entry.getKey())] = entry.getValue();
+        }
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new CallFrame();
+        }
+    }
+
+    public int globalIndex(String name) {
+        Integer index = globalIndices.get(name);
+        if (index != null) return index;
+
+        if (globalCount == globals.length) {
+            globals = Arrays.copyOf(globals, globalCount * 2);
+            globalNames = Arrays.copyOf(globalNames, globalCount * 2);
+            Arrays.fill(globals, globalCount, globals.length, ABSENT);
+        }
+        globalNames[globalCount] = name;
+        globalIndices.put(name, globalCount);
+        return globalCount++;
+    }
+
+    public void interpret(Prototype script) {
+        sp = 0;
+        frameCount = 0;
+        openUpvalues = null;
+
+        Closure closure = new Closure(script);
+        push(closure);
+        callClosure(closure, 0);
+        run(0);
+    }
+
+    // Executes until the frame at baseFrame returns and hands back its result.
+    // Getters re-enter here to run to completion in the middle of an instruction.
+    private Object run(int baseFrame) {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.prototype.chunk.code;
+        Object[] constants = frame.closure.prototype.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+        // Cached here and written back around anything that can push a
+        // frame. callClosure reserves maxStack slots, so plain stores are safe.
+        Object[] stack = this.stack;
+        int sp = this.sp;
+        // Only compiling adds globals, never running code.
+        Object[] globals = this.globals;
+
+        try {
+            while (true) {
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT: {
+                        stack[sp++] = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.NIL: stack[sp++] = null; break;
+                    case OpCode.TRUE: stack[sp++] = Boolean.TRUE; break;
+                    case OpCode.FALSE: stack[sp++] = Boolean.FALSE; break;
+                    case OpCode.UNDEFINED: stack[sp++] = UNDEFINED; break;
+                    case OpCode.POP: sp--; break;
+                    case OpCode.GET_LOCAL: {
+                        Object value = stack[base + (code[ip++] & 0xff)];
+                        if (value == UNDEFINED) throw new VmError("Accessing undefined value.");
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.SET_LOCAL: {
+                        stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.GET_GLOBAL: {
+                        int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        Object value = globals[index];
+                        if (value == ABSENT) {
+                            throw new VmError("Undefined variable '" + globalNames[index] + "'.");
+                        }
+                        if (value == UNDEFINED) throw new VmError("Accessing undefined value.");
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        globals[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)] = stack[--sp];
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        if (globals[index] == ABSENT) {
+                            throw new VmError("Undefined variable '" + globalNames[index] + "'.");
+                        }
+                        globals[index] = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        Object value = upvalue.isOpen ? stack[upvalue.slot] : upvalue.closed;
+                        if (value == UNDEFINED) throw new VmError("Accessing undefined value.");
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        if (upvalue.isOpen) {
+                            stack[upvalue.slot] = stack[sp - 1];
+                        } else {
+                            upvalue.closed = stack[sp - 1];
+                        }
+                        break;
+                    }
+                    case OpCode.GET_PROPERTY: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        frame.ip = ip;
+                        this.sp = sp;
+                        Object value = getProperty(stack[sp - 1], name);
+                        stack = this.stack;
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Object value = stack[--sp];
+                        Object object = stack[sp - 1];
+                        if (!(object instanceof VmInstance)) {
+                            throw new VmError("Only instances have fields.");
+                        }
+                        ((VmInstance)object).fields.put(name, value);
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        VmClass superclass = (VmClass)stack[--sp];
+                        Closure method = superclass.methods.get(name);
+                        if (method == null) {
+                            throw new VmError("Undefined property '" + name + "'.");
+                        }
+                        stack[sp - 1] = new BoundMethod(stack[sp - 1], method);
+                        break;
+                    }
+                    case OpCode.EQUAL: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = isEqual(stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = !isEqual(stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.GREATER:
+                    case OpCode.GREATER_EQUAL:
+                    case OpCode.LESS:
+                    case OpCode.LESS_EQUAL: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = compare(code[ip - 1], stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        if (left instanceof Double && right instanceof Double) {
+                            stack[sp - 1] = (double)left + (double)right;
+                        } else if (left instanceof String || right instanceof String) {
+                            stack[sp - 1] = stringify(left) + stringify(right);
+                        } else {
+                            throw new VmError("Operands must be two numbers or two strings.");
+                        }
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        Object right = stack[--sp];
+                        checkNumberOperands(stack[sp - 1], right);
+                        stack[sp - 1] = (double)stack[sp - 1] - (double)right;
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        Object right = stack[--sp];
+                        checkNumberOperands(stack[sp - 1], right);
+                        stack[sp - 1] = (double)stack[sp - 1] * (double)right;
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        Object right = stack[--sp];
+                        checkNumberOperands(stack[sp - 1], right);
+                        if ((double)right == 0) throw new VmError("Zero division error");
+                        stack[sp - 1] = (double)stack[sp - 1] / (double)right;
+                        break;
+                    }
+                    case OpCode.ELVIS: {
+                        Object right = stack[--sp];
+                        if (stack[sp - 1] == null) stack[sp - 1] = right;
+                        break;
+                    }
+                    case OpCode.NOT: {
+                        stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                        break;
+                    }
+                    case OpCode.NEGATE: {
+                        if (!(stack[sp - 1] instanceof Double)) {
+                            throw new VmError("Operand must be a number.");
+                        }
+                        stack[sp - 1] = -(double)stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.PRINT: {
+                        System.out.println(stringify(stack[--sp]));
+                        break;
+                    }
+                    case OpCode.JUMP: {
+                        ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_FALSE: {
+                        if (!isTruthy(stack[sp - 1])) ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_NOT_TRUE: {
+                        if (stack[sp - 1] != Boolean.TRUE) ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_NIL: {
+                        if (stack[sp - 1] == null) ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        ip -= ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        this.sp = sp;
+                        callValue(stack[sp - argCount - 1], argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.prototype.chunk.code;
+                        constants = frame.closure.prototype.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        stack = this.stack;
+                        sp = this.sp;
+                        break;
+                    }
+                    case OpCode.INVOKE: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        this.sp = sp;
+                        invoke(name, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.prototype.chunk.code;
+                        constants = frame.closure.prototype.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        stack = this.stack;
+                        sp = this.sp;
+                        break;
+                    }
+                    case OpCode.TAIL_CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        this.sp = sp;
+                        tailCall(stack[sp - argCount - 1], argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.prototype.chunk.code;
+                        constants = frame.closure.prototype.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        stack = this.stack;
+                        sp = this.sp;
+                        break;
+                    }
+                    case OpCode.TAIL_INVOKE: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        this.sp = sp;
+                        tailInvoke(name, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.prototype.chunk.code;
+                        constants = frame.closure.prototype.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        stack = this.stack;
+                        sp = this.sp;
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        Prototype prototype = (Prototype)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Closure closure = new Closure(prototype);
+                        for (int i = 0; i < closure.upvalues.length; i++) {
+                            boolean isLocal = code[ip++] == 1;
+                            int index = code[ip++] & 0xff;
+                            closure.upvalues[i] = isLocal
+                                    ? captureUpvalue(base + index)
+                                    : frame.closure.upvalues[index];
+                        }
+                        stack[sp++] = closure;
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE: {
+                        closeUpvalues(sp - 1);
+                        sp--;
+                        break;
+                    }
+                    case OpCode.RETURN: {
+                        Object result = stack[--sp];
+                        closeUpvalues(base);
+                        frameCount--;
+                        Arrays.fill(stack, base, sp, null);
+                        sp = base;
+                        if (frameCount == baseFrame) {
+                            this.sp = sp;
+                            return result;
+                        }
+
+                        stack[sp++] = result;
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.prototype.chunk.code;
+                        constants = frame.closure.prototype.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        break;
+                    }
+                    case OpCode.CLASS: {
+                        stack[sp++] = new VmClass((String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)]);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.INHERIT: {
+                        Object superclass = stack[sp - 2];
+                        if (!(superclass instanceof VmClass)) {
+                            throw new VmError("Superclass must be a class");
+                        }
+                        VmClass subclass = (VmClass)stack[--sp];
+                        subclass.methods.putAll(((VmClass)superclass).methods);
+                        subclass.initializer = ((VmClass)superclass).initializer;
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Closure method = (Closure)stack[--sp];
+                        VmClass klass = (VmClass)stack[sp - 1];
+                        klass.methods.put(name, method);
+                        if (name.equals("init")) klass.initializer = method;
+                        break;
+                    }
+                    case OpCode.GETTER: {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Closure getter = (Closure)stack[--sp];
+                        ((VmClass)stack[sp - 1]).getters.put(name, getter);
+                        break;
+                    }
+                    default:
+                        throw new VmError("Unknown opcode " + code[ip - 1] + ".");
+                }
+            }
+        } catch (VmError error) {
+            if (error.line == -1) error.line = frame.closure.prototype.chunk.lines[ip - 1];
+            throw error;
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof Closure) {
+            callClosure((Closure)callee, argCount);
+        } else if (callee instanceof BoundMethod) {
+            BoundMethod bound = (BoundMethod)callee;
+            stack[sp - argCount - 1] = bound.receiver;
+            callClosure(bound.method, argCount);
+        } else if (callee instanceof VmClass) {
+            VmClass klass = (VmClass)callee;
+            stack[sp - argCount - 1] = new VmInstance(klass);
+            if (klass.initializer != null) {
+                callClosure(klass.initializer, argCount);
+            } else if (argCount != 0) {
+                throw new VmError("Expected 0 arguments but got " + argCount + ".");
+            }
+        } else if (callee instanceof MgrCallable) {
+            MgrCallable function = (MgrCallable)callee;
+            if (argCount != function.arity()) {
+                throw new VmError("Expected " + function.arity() + " arguments but got " + argCount + ".");
+            }
+            List<Object> arguments = new ArrayList<>(argCount);
+            for (int i = sp - argCount; i < sp; i++) {
+                arguments.add(stack[i]);
+            }
+            sp -= argCount + 1;
+            // Natives don't use the tree-walking interpreter, so there is
+            // none to hand them. The VM only knows plain strings, so the
+            // string views some natives return are flattened.
+            Object result;
+            try {
+                result = function.call(null, arguments);
+            } catch (NativeError error) {
+                throw new VmError(error.getMessage());
+            }
+            push(result instanceof CharSequence ? result.toString() : result);
+        } else {
+            throw new VmError("Can only call functions and classes.");
+        }
+    }
+
+    private void callClosure(Closure closure, int argCount) {
+        if (argCount != closure.prototype.arity) {
+            throw new VmError("Expected " + closure.prototype.arity + " arguments but got " + argCount + ".");
+        }
+        if (frameCount == FRAMES_MAX) {
+            throw new VmError("Stack overflow.");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+            for (int i = frameCount; i < frames.length; i++) {
+                frames[i] = new CallFrame();
+            }
+        }
+
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+
+        int needed = frame.base + closure.prototype.maxStack;
+        if (needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+        }
+    }
+
+    // Runs a closure in the frame of the function making the call, whose
+    // locals are dead once it returns the result. The callee and its
+    // arguments move down to the frame's base.
+    private void replaceFrame(Closure closure, int argCount) {
+        if (argCount != closure.prototype.arity) {
+            throw new VmError("Expected " + closure.prototype.arity + " arguments but got " + argCount + ".");
+        }
+
+        CallFrame frame = frames[frameCount - 1];
+        closeUpvalues(frame.base);
+        System.arraycopy(stack, sp - argCount - 1, stack, frame.base, argCount + 1);
+        Arrays.fill(stack, frame.base + argCount + 1, sp, null);
+        sp = frame.base + argCount + 1;
+        frame.closure = closure;
+        frame.ip = 0;
+
+        int needed = frame.base + closure.prototype.maxStack;
+        if (needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+        }
+    }
+
+    // Anything but a closure or bound method is called as usual, and the
+    // RETURN after the instruction returns its result.
+    private void tailCall(Object callee, int argCount) {
+        if (callee instanceof Closure) {
+            replaceFrame((Closure)callee, argCount);
+        } else if (callee instanceof BoundMethod) {
+            BoundMethod bound = (BoundMethod)callee;
+            stack[sp - argCount - 1] = bound.receiver;
+            replaceFrame(bound.method, argCount);
+        } else {
+            callValue(callee, argCount);
+        }
+    }
+
+    private void tailInvoke(String name, int argCount) {
+        Object receiver = stack[sp - argCount - 1];
+        if (receiver instanceof VmInstance) {
+            VmInstance instance = (VmInstance)receiver;
+            if (!instance.fields.containsKey(name)) {
+                Closure method = instance.klass.methods.get(name);
+                if (method != null && !instance.klass.getters.containsKey(name)) {
+                    replaceFrame(method, argCount);
+                    return;
+                }
+            }
+        }
+
+        Object callee = getProperty(receiver, name);
+        stack[sp - argCount - 1] = callee;
+        tailCall(callee, argCount);
+    }
+
+    private Object callGetter(Closure getter, Object receiver) {
+        push(receiver);
+        callClosure(getter, 0);
+        return run(frameCount - 1);
+    }
+
+    private Object getProperty(Object object, String name) {
+        if (object instanceof VmInstance) {
+            VmInstance instance = (VmInstance)object;
+            Object value = instance.fields.get(name);
+            if (value != null || instance.fields.containsKey(name)) return value;
+
+            Closure getter = instance.klass.getters.get(name);
+            if (getter != null) return callGetter(getter, instance);
+
+            Closure method = instance.klass.methods.get(name);
+            if (method != null) return new BoundMethod(instance, method);
+
+            throw new VmError("Undefined property '" + name + "'.");
+        }
+
+        if (object instanceof MgrInstance) {
+            MgrCallable method = ((MgrInstance)object).findNativeMethod(name);
+            if (method instanceof NativeMethod) return ((NativeMethod)method).bind((MgrInstance)object);
+            if (method != null) return method;
+
+            throw new VmError("Undefined property '" + name + "'.");
+        }
+
+        throw new VmError("Only instances have properties.");
+    }
+
+    // A method call on a property: runs the method directly on the receiver
+    // instead of allocating a BoundMethod for it first.
+    private void invoke(String name, int argCount) {
+        Object receiver = stack[sp - argCount - 1];
+        if (receiver instanceof VmInstance) {
+            VmInstance instance = (VmInstance)receiver;
+            if (!instance.fields.containsKey(name)) {
+                Closure method = instance.klass.methods.get(name);
+                if (method != null && !instance.klass.getters.containsKey(name)) {
+                    callClosure(method, argCount);
+                    return;
+                }
+            }
+        }
+
+        Object callee = getProperty(receiver, name);
+        stack[sp - argCount - 1] = callee;
+        callValue(callee, argCount);
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.isOpen = false;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private static Boolean compare(byte op, Object left, Object right) {
+        int order;
+        if (left instanceof Double && right instanceof Double) {
+            double l = (double)left;
+            double r = (double)right;
+            switch (op) {
+                case OpCode.GREATER: return l > r;
+                case OpCode.GREATER_EQUAL: return l >= r;
+                case OpCode.LESS: return l < r;
+                default: return l <= r;
+            }
+        } else if (left instanceof String && right instanceof String) {
+            order = ((String)left).compareTo((String)right);
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            order = Boolean.compare((boolean)left, (boolean)right);
+        } else {
+            throw new VmError("Both operands must be numbers, strings or booleans.");
+        }
+
+        switch (op) {
+            case OpCode.GREATER: return order > 0;
+            case OpCode.GREATER_EQUAL: return order >= 0;
+            case OpCode.LESS: return order < 0;
+            default: return order <= 0;
+        }
+    }
+
+    private static void checkNumberOperands(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new VmError("Operands must be numbers.");
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        return a.equals(b);
+    }
+
+    private static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
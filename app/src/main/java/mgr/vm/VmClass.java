@@ -0,0 +1,20 @@
+package mgr.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class VmClass {
+    final String name;
+    final Map<String, Closure> methods = new HashMap<>();
+    final Map<String, Closure> getters = new HashMap<>();
+    Closure initializer;
+
+    VmClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
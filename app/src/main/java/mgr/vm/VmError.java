@@ -0,0 +1,15 @@
+package mgr.vm;
+
+public class VmError extends RuntimeException {
+    // Filled in by the dispatch loop from the line table of the failing
+    // instruction; -1 until then.
+    int line = -1;
+
+    VmError(String message) {
+        super(message);
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
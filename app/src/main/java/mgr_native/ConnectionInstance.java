@@ -0,0 +1,168 @@
+package mgr_native;
+
+import mgr.MgrCallable;
+import mgr.MgrInstance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// One non-blocking connection of an EventLoop. Incoming bytes are split
+// into lines, without the line break, for the onLine callback. Outgoing
+// lines are written straight away when the socket takes them, and the rest
+// is queued until the selector reports the socket writable again.
+public class ConnectionInstance extends MgrInstance {
+    private static final int READ_SIZE = 8192;
+    // A peer that keeps sending without a line break is dropped once the
+    // unfinished line reaches this, rather than holding memory without end.
+    private static final int MAX_LINE = 4 * READ_SIZE;
+
+    private final EventLoopInstance loop;
+    private final SocketChannel channel;
+    private SelectionKey key = null;
+    MgrCallable onLine = null;
+    MgrCallable onClose = null;
+
+    private final ByteBuffer input = ByteBuffer.allocate(READ_SIZE);
+    // Bytes of a line not finished yet.
+    private byte[] partial = new byte[0];
+    private int partialLength = 0;
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private boolean closing = false;
+    private boolean closed = false;
+
+    ConnectionInstance(MgrConnection klass, EventLoopInstance loop, SocketChannel channel) {
+        super(klass);
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    void ready(SelectionKey key) {
+        try {
+            if (key.isWritable()) flush();
+            if (!closed && key.isReadable()) read();
+        } catch (IOException e) {
+            // The peer went away; treat it as the end of the connection.
+            finish();
+        }
+    }
+
+    void send(CharSequence text) {
+        if (closed || closing) return;
+
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        output.add(ByteBuffer.wrap(bytes));
+        try {
+            if (output.size() == 1) flush();
+        } catch (IOException e) {
+            finish();
+        }
+    }
+
+    void close() {
+        if (closed) return;
+
+        closing = true;
+        if (output.isEmpty()) finish();
+    }
+
+    private void read() throws IOException {
+        input.clear();
+        int count = channel.read(input);
+        if (count == -1) {
+            if (partialLength > 0) line(partial, 0, partialLength);
+            partialLength = 0;
+            finish();
+            return;
+        }
+
+        byte[] bytes = input.array();
+        int start = 0;
+        for (int i = 0; i < count && !closed; i++) {
+            if (bytes[i] != '\n') continue;
+
+            if (partialLength > 0) {
+                if (!append(bytes, start, i)) return;
+                line(partial, 0, partialLength);
+                partialLength = 0;
+            } else {
+                line(bytes, start, i);
+            }
+            start = i + 1;
+        }
+        if (!closed) append(bytes, start, count);
+    }
+
+    private void line(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') end--;
+        if (onLine != null && !closing) {
+            loop.call(onLine, new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Adds to the unfinished line, or closes the connection and returns
+    // false when that makes the line too long.
+    private boolean append(byte[] bytes, int start, int end) {
+        int count = end - start;
+        if (partialLength + count > MAX_LINE) {
+            partialLength = 0;
+            finish();
+            return false;
+        }
+
+        if (partialLength + count > partial.length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + count));
+        }
+        System.arraycopy(bytes, start, partial, partialLength, count);
+        partialLength += count;
+        return true;
+    }
+
+    // Writes as much of the queue as the socket takes, and asks to hear
+    // when it is writable again if some is left.
+    private void flush() throws IOException {
+        while (!output.isEmpty()) {
+            ByteBuffer buffer = output.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) break;
+            output.poll();
+        }
+
+        if (output.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ);
+            if (closing) finish();
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void finish() {
+        if (closed) return;
+
+        closed = true;
+        output.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closing anyway.
+        }
+        loop.closed();
+        if (onClose != null) loop.call(onClose, this);
+    }
+
+    @Override
+    public String toString() {
+        return "<connection>";
+    }
+}
@@ -0,0 +1,117 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrCallable;
+import mgr.MgrInstance;
+import mgr.NativeError;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+
+// The selector of one EventLoop. Keys of listening sockets carry a
+// Listener and keys of connections their ConnectionInstance.
+public class EventLoopInstance extends MgrInstance {
+    private final MgrConnection connectionClass;
+    private Selector selector = null;
+    private Interpreter interpreter = null;
+    private boolean running = false;
+    // Listening sockets and connections still open. The selector's own key
+    // set keeps cancelled keys until the next select, so it can't tell.
+    private int open = 0;
+
+    EventLoopInstance(MgrEventLoop klass, MgrConnection connectionClass) {
+        super(klass);
+        this.connectionClass = connectionClass;
+    }
+
+    void listen(int port, MgrCallable onAccept) {
+        try {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(port), 1024);
+            channel.configureBlocking(false);
+            channel.register(selector(), SelectionKey.OP_ACCEPT, new Listener(channel, onAccept));
+            open++;
+        } catch (IOException e) {
+            throw new NativeError("Cannot listen on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    void run(Interpreter interpreter) {
+        if (running) throw new NativeError("Event loop is already running.");
+
+        this.interpreter = interpreter;
+        running = true;
+        try {
+            while (running && open > 0) {
+                selector().select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.attachment() instanceof Listener) {
+                        accept((Listener)key.attachment());
+                    } else {
+                        ((ConnectionInstance)key.attachment()).ready(key);
+                    }
+                    if (!running) break;
+                }
+            }
+        } catch (IOException e) {
+            throw new NativeError("Event loop failed: " + e.getMessage());
+        } finally {
+            running = false;
+            this.interpreter = null;
+        }
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    void call(MgrCallable callback, Object argument) {
+        callback.call(interpreter, Collections.singletonList(argument));
+    }
+
+    // A connection has closed for good.
+    void closed() {
+        open--;
+    }
+
+    private void accept(Listener listener) throws IOException {
+        // Take every pending connection, so a burst of clients doesn't
+        // cost one select each.
+        SocketChannel channel;
+        while (running && (channel = listener.channel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ConnectionInstance connection = new ConnectionInstance(connectionClass, this, channel);
+            connection.register(selector);
+            open++;
+            call(listener.onAccept, connection);
+        }
+    }
+
+    private Selector selector() throws IOException {
+        if (selector == null) selector = Selector.open();
+        return selector;
+    }
+
+    private static final class Listener {
+        final ServerSocketChannel channel;
+        final MgrCallable onAccept;
+
+        Listener(ServerSocketChannel channel, MgrCallable onAccept) {
+            this.channel = channel;
+            this.onAccept = onAccept;
+        }
+    }
+}
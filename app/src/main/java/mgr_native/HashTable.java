@@ -0,0 +1,174 @@
+package mgr_native;
+
+import java.util.Arrays;
+
+// The open addressing table behind Map and Set. Slots are probed linearly
+// from the key's hash, and removal shifts the rest of a run back instead of
+// leaving tombstones. Each slot keeps its key's hash, so probing compares
+// hashes before keys and growing never hashes a key again.
+//
+// Keys are matched the way == matches values. Number keys are stored
+// unboxed in a double[] beside the keys. String keys of any form hash by
+// content, and are stored as Strings, so a key taken from a view or a rope
+// doesn't keep the larger string alive; looking one up copies nothing.
+final class HashTable {
+    private static final Object NUMBER = new Object();
+    private static final Object NIL = new Object();
+    private static final int MIN_CAPACITY = 8;
+
+    private Object[] keys = new Object[MIN_CAPACITY];
+    private double[] numbers = new double[MIN_CAPACITY];
+    private int[] hashes = new int[MIN_CAPACITY];
+    private Object[] values;
+    private int size = 0;
+
+    HashTable(boolean withValues) {
+        values = withValues ? new Object[MIN_CAPACITY] : null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // The slot holding key, or -1.
+    int find(Object key) {
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Object stored = keys[i];
+            if (stored == null) return -1;
+            if (hashes[i] == hash && matches(i, stored, key)) return i;
+        }
+    }
+
+    // The slot holding key, adding the key first if it is new.
+    int insert(Object key) {
+        int slot = find(key);
+        if (slot != -1) return slot;
+
+        if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) i = (i + 1) & mask;
+
+        store(i, key, hash);
+        size++;
+        return i;
+    }
+
+    boolean remove(Object key) {
+        int slot = find(key);
+        if (slot == -1) return false;
+
+        // Move later entries of the run into the gap when their home slot
+        // doesn't lie between the gap and where they are.
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hashes[i] & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                numbers[gap] = numbers[i];
+                hashes[gap] = hashes[i];
+                if (values != null) values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        if (values != null) values[gap] = null;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(keys, null);
+        if (values != null) Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean occupied(int slot) {
+        return keys[slot] != null;
+    }
+
+    Object key(int slot) {
+        Object key = keys[slot];
+        if (key == NUMBER) return numbers[slot];
+        return key == NIL ? null : key;
+    }
+
+    Object value(int slot) {
+        return values[slot];
+    }
+
+    void setValue(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    private void store(int slot, Object key, int hash) {
+        if (key instanceof Double) {
+            keys[slot] = NUMBER;
+            numbers[slot] = (double)key;
+        } else if (key == null) {
+            keys[slot] = NIL;
+        } else {
+            keys[slot] = key instanceof CharSequence ? key.toString() : key;
+        }
+        hashes[slot] = hash;
+    }
+
+    private boolean matches(int slot, Object stored, Object key) {
+        if (stored == NUMBER) {
+            return key instanceof Double
+                && Double.doubleToLongBits(numbers[slot]) == Double.doubleToLongBits((double)key);
+        }
+        if (stored == NIL) return key == null;
+        if (stored instanceof String) {
+            return key instanceof CharSequence && ((String)stored).contentEquals((CharSequence)key);
+        }
+        return stored.equals(key);
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        double[] oldNumbers = numbers;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+
+        keys = new Object[capacity];
+        numbers = new double[capacity];
+        hashes = new int[capacity];
+        if (oldValues != null) values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) continue;
+
+            int i = oldHashes[j] & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            numbers[i] = oldNumbers[j];
+            hashes[i] = oldHashes[j];
+            if (oldValues != null) values[i] = oldValues[j];
+        }
+    }
+
+    private static int hash(Object key) {
+        int h;
+        if (key instanceof Double) {
+            long bits = Double.doubleToLongBits((double)key);
+            h = (int)(bits ^ (bits >>> 32));
+        } else {
+            h = key == null ? 0 : key.hashCode();
+        }
+
+        // Spread the bits, since the table only looks at the low ones and
+        // small integral doubles differ only in the high ones.
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
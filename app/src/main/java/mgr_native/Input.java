@@ -16,7 +16,10 @@ public class Input implements MgrCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        return scn.nextLine();
+        // Tasks on several threads may read at once.
+        synchronized (scn) {
+            return scn.nextLine();
+        }
     }
 
     @Override
@@ -0,0 +1,130 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrInstance;
+import mgr.NativeError;
+
+import java.util.Arrays;
+
+// The elements of one List. A list holding only numbers keeps them in a
+// double[], so building and summing a numeric list boxes nothing. The
+// first element that is not a number moves everything to an Object[] for
+// good; reading a number out of the double[] boxes it at that point.
+public class ListInstance extends MgrInstance {
+    private static final int MIN_CAPACITY = 8;
+
+    private double[] numbers = new double[0];
+    private Object[] objects = null;
+    private int size = 0;
+
+    ListInstance(MgrList klass) {
+        super(klass);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Object get(int index) {
+        check(index);
+        return objects != null ? objects[index] : (Object)numbers[index];
+    }
+
+    public void add(Object value) {
+        if (objects == null && !(value instanceof Double)) promote();
+
+        if (objects == null) {
+            if (size == numbers.length) numbers = Arrays.copyOf(numbers, grow(size + 1));
+            numbers[size++] = (double)value;
+        } else {
+            if (size == objects.length) objects = Arrays.copyOf(objects, grow(size + 1));
+            objects[size++] = value;
+        }
+    }
+
+    void set(int index, Object value) {
+        check(index);
+        if (objects == null && !(value instanceof Double)) promote();
+
+        if (objects == null) {
+            numbers[index] = (double)value;
+        } else {
+            objects[index] = value;
+        }
+    }
+
+    Object pop() {
+        if (size == 0) throw new NativeError("Cannot pop from an empty list.");
+
+        size--;
+        if (objects == null) return numbers[size];
+
+        Object value = objects[size];
+        objects[size] = null;
+        return value;
+    }
+
+    void addAll(ListInstance other) {
+        int count = other.size;
+        if (objects == null && other.objects == null) {
+            if (size + count > numbers.length) numbers = Arrays.copyOf(numbers, grow(size + count));
+            System.arraycopy(other.numbers, 0, numbers, size, count);
+            size += count;
+            return;
+        }
+
+        if (objects == null) promote();
+        if (size + count > objects.length) objects = Arrays.copyOf(objects, grow(size + count));
+        for (int i = 0; i < count; i++) {
+            objects[size + i] = other.objects != null ? other.objects[i] : (Object)other.numbers[i];
+        }
+        size += count;
+    }
+
+    void clear() {
+        // Back to numbers, so a list reused as a buffer stays unboxed.
+        numbers = new double[0];
+        objects = null;
+        size = 0;
+    }
+
+    double sum() {
+        double sum = 0;
+        if (objects == null) {
+            for (int i = 0; i < size; i++) sum += numbers[i];
+            return sum;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (!(objects[i] instanceof Double)) throw new NativeError("sum expects a list of numbers.");
+            sum += (double)objects[i];
+        }
+        return sum;
+    }
+
+    private void promote() {
+        objects = new Object[Math.max(numbers.length, MIN_CAPACITY)];
+        for (int i = 0; i < size; i++) objects[i] = numbers[i];
+        numbers = null;
+    }
+
+    private void check(int index) {
+        if (index >= size) throw new NativeError("List index out of range.");
+    }
+
+    private static int grow(int needed) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) capacity *= 2;
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(Interpreter.stringify(get(i)));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,37 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrInstance;
+
+// The entries of one Map or the elements of one Set.
+public class MapInstance extends MgrInstance {
+    final HashTable table;
+    private final boolean set;
+
+    MapInstance(MgrMap klass) {
+        super(klass);
+        this.table = new HashTable(true);
+        this.set = false;
+    }
+
+    MapInstance(MgrSet klass) {
+        super(klass);
+        this.table = new HashTable(false);
+        this.set = true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        boolean first = true;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (!table.occupied(slot)) continue;
+
+            if (!first) builder.append(", ");
+            first = false;
+            builder.append(Interpreter.stringify(table.key(slot)));
+            if (!set) builder.append(": ").append(Interpreter.stringify(table.value(slot)));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,44 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The class of connections accepted by an EventLoop. onLine(fn) and
+// onClose(fn) register callbacks, send(text) queues a line for writing and
+// close() closes once everything queued has been written. Scripts get
+// connections from listen callbacks, so the class isn't a global.
+public class MgrConnection extends MgrNativeClass {
+    MgrConnection() {
+        super("Connection", 0);
+        defineNativeMethod("onLine", new NativeMethod(1, (interpreter, frame) -> {
+            connection(frame).onLine = MgrEventLoop.callback("onLine", frame[1], 1);
+            return null;
+        }));
+        defineNativeMethod("onClose", new NativeMethod(1, (interpreter, frame) -> {
+            connection(frame).onClose = MgrEventLoop.callback("onClose", frame[1], 1);
+            return null;
+        }));
+        defineNativeMethod("send", new NativeMethod(1, (interpreter, frame) -> {
+            if (!(frame[1] instanceof CharSequence)) throw new NativeError("send expects a string.");
+            connection(frame).send((CharSequence)frame[1]);
+            return null;
+        }));
+        defineNativeMethod("close", new NativeMethod(0, (interpreter, frame) -> {
+            connection(frame).close();
+            return null;
+        }));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        throw new NativeError("Connections are made by an EventLoop.");
+    }
+
+    private static ConnectionInstance connection(Object[] frame) {
+        return (ConnectionInstance)frame[0];
+    }
+}
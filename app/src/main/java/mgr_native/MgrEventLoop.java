@@ -0,0 +1,54 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrCallable;
+import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The native EventLoop class. listen(port, onAccept) opens a non-blocking
+// listening socket, and run() waits on a selector for all of them and the
+// connections they accept, calling script callbacks as connections arrive,
+// lines come in and connections close, until nothing is left open or a
+// callback calls stop(). One thread serves every connection, so callbacks
+// must not block.
+public class MgrEventLoop extends MgrNativeClass {
+    private final MgrConnection connection = new MgrConnection();
+
+    public MgrEventLoop() {
+        super("EventLoop", 0);
+        defineNativeMethod("listen", new NativeMethod(2, (interpreter, frame) -> {
+            loop(frame).listen(Natives.port("listen", frame[1]), callback("listen", frame[2], 1));
+            return null;
+        }));
+        defineNativeMethod("run", new NativeMethod(0, (interpreter, frame) -> {
+            loop(frame).run(interpreter);
+            return null;
+        }));
+        defineNativeMethod("stop", new NativeMethod(0, (interpreter, frame) -> {
+            loop(frame).stop();
+            return null;
+        }));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return new EventLoopInstance(this, connection);
+    }
+
+    private static EventLoopInstance loop(Object[] frame) {
+        return (EventLoopInstance)frame[0];
+    }
+
+    // Checks that a value passed as a callback can be called with count
+    // arguments.
+    static MgrCallable callback(String name, Object value, int count) {
+        if (!(value instanceof MgrCallable) || ((MgrCallable)value).arity() != count) {
+            throw new NativeError(name + " expects a function of " + count
+                + (count == 1 ? " argument." : " arguments."));
+        }
+        return (MgrCallable)value;
+    }
+}
@@ -0,0 +1,57 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The native List class. List() makes an empty list; its methods work on
+// the ListInstance they are called on.
+public class MgrList extends MgrNativeClass {
+    public MgrList() {
+        super("List", 0);
+        defineNativeMethod("add", new NativeMethod(1, (interpreter, frame) -> {
+            list(frame).add(frame[1]);
+            return null;
+        }));
+        defineNativeMethod("get", new NativeMethod(1, (interpreter, frame) ->
+            list(frame).get(index(frame[1]))));
+        defineNativeMethod("set", new NativeMethod(2, (interpreter, frame) -> {
+            list(frame).set(index(frame[1]), frame[2]);
+            return null;
+        }));
+        defineNativeMethod("size", new NativeMethod(0, (interpreter, frame) ->
+            (double)list(frame).size()));
+        defineNativeMethod("pop", new NativeMethod(0, (interpreter, frame) ->
+            list(frame).pop()));
+        defineNativeMethod("addAll", new NativeMethod(1, (interpreter, frame) -> {
+            if (!(frame[1] instanceof ListInstance)) throw new NativeError("addAll expects a list.");
+            list(frame).addAll((ListInstance)frame[1]);
+            return null;
+        }));
+        defineNativeMethod("clear", new NativeMethod(0, (interpreter, frame) -> {
+            list(frame).clear();
+            return null;
+        }));
+        defineNativeMethod("sum", new NativeMethod(0, (interpreter, frame) ->
+            list(frame).sum()));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return new ListInstance(this);
+    }
+
+    private static ListInstance list(Object[] frame) {
+        return (ListInstance)frame[0];
+    }
+
+    private static int index(Object value) {
+        if (!(value instanceof Double) || (double)value != Math.floor((double)value) || (double)value < 0) {
+            throw new NativeError("List index must be a non-negative integer.");
+        }
+        return (int)(double)value;
+    }
+}
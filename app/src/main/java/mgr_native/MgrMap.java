@@ -0,0 +1,60 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrNativeClass;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The native Map class. Keys can be any value and match as they would with
+// ==; get of a missing key is nil.
+public class MgrMap extends MgrNativeClass {
+    public MgrMap(MgrList list) {
+        super("Map", 0);
+        defineNativeMethod("set", new NativeMethod(2, (interpreter, frame) -> {
+            HashTable table = table(frame);
+            table.setValue(table.insert(frame[1]), frame[2]);
+            return null;
+        }));
+        defineNativeMethod("get", new NativeMethod(1, (interpreter, frame) -> {
+            HashTable table = table(frame);
+            int slot = table.find(frame[1]);
+            return slot == -1 ? null : table.value(slot);
+        }));
+        defineNativeMethod("has", new NativeMethod(1, (interpreter, frame) ->
+            table(frame).find(frame[1]) != -1));
+        defineNativeMethod("remove", new NativeMethod(1, (interpreter, frame) ->
+            table(frame).remove(frame[1])));
+        defineNativeMethod("size", new NativeMethod(0, (interpreter, frame) ->
+            (double)table(frame).size()));
+        defineNativeMethod("clear", new NativeMethod(0, (interpreter, frame) -> {
+            table(frame).clear();
+            return null;
+        }));
+        defineNativeMethod("keys", new NativeMethod(0, (interpreter, frame) -> {
+            HashTable table = table(frame);
+            ListInstance keys = new ListInstance(list);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.occupied(slot)) keys.add(table.key(slot));
+            }
+            return keys;
+        }));
+        defineNativeMethod("values", new NativeMethod(0, (interpreter, frame) -> {
+            HashTable table = table(frame);
+            ListInstance values = new ListInstance(list);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.occupied(slot)) values.add(table.value(slot));
+            }
+            return values;
+        }));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return new MapInstance(this);
+    }
+
+    private static HashTable table(Object[] frame) {
+        return ((MapInstance)frame[0]).table;
+    }
+}
@@ -1,55 +1,37 @@
 package mgr_native;
 
 import mgr.Interpreter;
-import mgr.MgrCallable;
-import mgr.MgrInstance;
 import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.List;
 
+// The native ServerSocket class. ServerSocket(port) listens on a port of
+// its own, and accept() waits for the next client and returns a Socket.
 public class MgrServerSocket extends MgrNativeClass {
-    private ServerSocket serverSocket;
+    private final MgrSocket socketClass;
 
-    public MgrServerSocket() {
+    public MgrServerSocket(MgrSocket socketClass) {
         super("ServerSocket", 1);
-        defineNativeMethod("accept", new MgrCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                try {
-                    MgrSocket socket = new MgrSocket(serverSocket.accept());
-                    return new MgrInstance(socket);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return null;
-                }
-            }
-        });
+        this.socketClass = socketClass;
+        defineNativeMethod("accept", new NativeMethod(0, (interpreter, frame) ->
+            ((ServerSocketInstance)frame[0]).accept()));
+        defineNativeMethod("close", new NativeMethod(0, (interpreter, frame) -> {
+            ((ServerSocketInstance)frame[0]).close();
+            return null;
+        }));
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        MgrInstance instance = new MgrInstance(this);
-        int port;
-        try {
-            Double p = (Double)arguments.get(0);
-            port = p.intValue();
-        } catch (ClassCastException e) {
-            e.printStackTrace();
-            return null;
-        }
+        int port = Natives.port("ServerSocket", arguments.get(0));
         try {
-            this.serverSocket = new ServerSocket(port);
+            return new ServerSocketInstance(this, socketClass, new ServerSocket(port));
         } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            throw new NativeError("Cannot listen on port " + port + ": " + e.getMessage());
         }
-        return instance;
     }
 }
@@ -0,0 +1,45 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrNativeClass;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The native Set class, a Map without values.
+public class MgrSet extends MgrNativeClass {
+    public MgrSet(MgrList list) {
+        super("Set", 0);
+        defineNativeMethod("add", new NativeMethod(1, (interpreter, frame) -> {
+            table(frame).insert(frame[1]);
+            return null;
+        }));
+        defineNativeMethod("has", new NativeMethod(1, (interpreter, frame) ->
+            table(frame).find(frame[1]) != -1));
+        defineNativeMethod("remove", new NativeMethod(1, (interpreter, frame) ->
+            table(frame).remove(frame[1])));
+        defineNativeMethod("size", new NativeMethod(0, (interpreter, frame) ->
+            (double)table(frame).size()));
+        defineNativeMethod("clear", new NativeMethod(0, (interpreter, frame) -> {
+            table(frame).clear();
+            return null;
+        }));
+        defineNativeMethod("values", new NativeMethod(0, (interpreter, frame) -> {
+            HashTable table = table(frame);
+            ListInstance values = new ListInstance(list);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.occupied(slot)) values.add(table.key(slot));
+            }
+            return values;
+        }));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return new MapInstance(this);
+    }
+
+    private static HashTable table(Object[] frame) {
+        return ((MapInstance)frame[0]).table;
+    }
+}
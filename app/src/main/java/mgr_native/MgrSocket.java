@@ -1,100 +1,58 @@
 package mgr_native;
 
 import mgr.Interpreter;
-import mgr.MgrCallable;
-import mgr.MgrInstance;
 import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.List;
-import java.util.Scanner;
 
+// The native Socket class. Socket(host, port) connects, and each instance
+// is a connection of its own, as are those ServerSocket accepts.
 public class MgrSocket extends MgrNativeClass {
-    private Socket socket;
-    private PrintWriter pw;
-    private Scanner sc;
-
-    public MgrSocket(Socket socket) {
-        this();
-        this.socket = socket;
-        try {
-            this.pw = new PrintWriter(socket.getOutputStream(), true);
-            this.sc = new Scanner(socket.getInputStream());
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e.getMessage());
-        }
-    }
-
     public MgrSocket() {
         super("Socket", 2);
-        defineNativeMethod("send", new MgrCallable() {
-            @Override
-            public int arity() {
-                return 1;
-            }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                String data = arguments.get(0).toString();
-                pw.println(data);
-                return null;
-            }
-        });
-        defineNativeMethod("receive", new MgrCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return sc.nextLine();
-            }
-        });
-
-        defineNativeMethod("close", new MgrCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                try {
-                    socket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return null;
-                }
-                return null;
-            }
-        });
+        defineNativeMethod("send", new NativeMethod(1, (interpreter, frame) -> {
+            socket(frame).send(frame[1]);
+            return null;
+        }));
+        defineNativeMethod("sendAll", new NativeMethod(1, (interpreter, frame) -> {
+            if (!(frame[1] instanceof ListInstance)) throw new NativeError("sendAll expects a list.");
+            socket(frame).sendAll((ListInstance)frame[1]);
+            return null;
+        }));
+        defineNativeMethod("flush", new NativeMethod(0, (interpreter, frame) -> {
+            socket(frame).flush();
+            return null;
+        }));
+        defineNativeMethod("receive", new NativeMethod(0, (interpreter, frame) ->
+            socket(frame).receive()));
+        defineNativeMethod("close", new NativeMethod(0, (interpreter, frame) -> {
+            socket(frame).close();
+            return null;
+        }));
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        MgrInstance instance = new MgrInstance(this);
-        String address;
-        int port;
-        try {
-            address = (String)arguments.get(0);
-            Double p = (Double)arguments.get(1);
-            port = p.intValue();
-        } catch (ClassCastException e) {
-            e.printStackTrace();
-            return null;
-        }
+        if (!(arguments.get(0) instanceof String)) throw new NativeError("Socket expects a host name.");
+        String address = (String)arguments.get(0);
+        int port = Natives.port("Socket", arguments.get(1));
         try {
-            this.socket = new Socket(address, port);
-            this.pw = new PrintWriter(this.socket.getOutputStream(), true);
-            this.sc = new Scanner(this.socket.getInputStream());
+            return new SocketInstance(this, new Socket(address, port));
         } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            throw new NativeError("Cannot connect to " + address + ":" + port + ": " + e.getMessage());
         }
-        return instance;
+    }
+
+    // A connection accepted by a ServerSocket.
+    SocketInstance accepted(Socket socket) throws IOException {
+        return new SocketInstance(this, socket);
+    }
+
+    private static SocketInstance socket(Object[] frame) {
+        return (SocketInstance)frame[0];
     }
 }
@@ -0,0 +1,23 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrNativeClass;
+import mgr.NativeError;
+import mgr.NativeMethod;
+
+import java.util.List;
+
+// The class of tasks made by spawn. join() waits for a task to finish and
+// returns the value its function returned.
+public class MgrTask extends MgrNativeClass {
+    MgrTask() {
+        super("Task", 0);
+        defineNativeMethod("join", new NativeMethod(0, (interpreter, frame) ->
+            ((TaskInstance)frame[0]).join()));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        throw new NativeError("Tasks are made by spawn.");
+    }
+}
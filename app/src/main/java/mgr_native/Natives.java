@@ -0,0 +1,39 @@
+package mgr_native;
+
+import mgr.NativeError;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Natives {
+    private Natives() { }
+
+    // Fresh native globals for one execution engine. Native classes keep
+    // state, so engines must not share the returned objects.
+    public static Map<String, Object> create() {
+        Map<String, Object> natives = new LinkedHashMap<>();
+        natives.put("input", new Input());
+        natives.put("clock", new Clock());
+        natives.put("reverse", new Reverse());
+        MgrSocket socket = new MgrSocket();
+        natives.put("Socket", socket);
+        natives.put("ServerSocket", new MgrServerSocket(socket));
+        natives.put("EventLoop", new MgrEventLoop());
+        natives.put("spawn", new Spawn());
+        MgrList list = new MgrList();
+        natives.put("List", list);
+        natives.put("Map", new MgrMap(list));
+        natives.put("Set", new MgrSet(list));
+        StringNatives.define(natives, list);
+        return natives;
+    }
+
+    // Checks that a value passed to the native called name is a port number.
+    static int port(String name, Object value) {
+        if (!(value instanceof Double) || (double)value != Math.floor((double)value)
+            || (double)value < 0 || (double)value > 65535) {
+            throw new NativeError(name + " expects a port number.");
+        }
+        return (int)(double)value;
+    }
+}
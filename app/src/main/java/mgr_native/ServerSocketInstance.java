@@ -0,0 +1,40 @@
+package mgr_native;
+
+import mgr.MgrInstance;
+import mgr.NativeError;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+// One listening socket.
+public class ServerSocketInstance extends MgrInstance {
+    private final MgrSocket socketClass;
+    private final ServerSocket serverSocket;
+
+    ServerSocketInstance(MgrServerSocket klass, MgrSocket socketClass, ServerSocket serverSocket) {
+        super(klass);
+        this.socketClass = socketClass;
+        this.serverSocket = serverSocket;
+    }
+
+    SocketInstance accept() {
+        try {
+            return socketClass.accepted(serverSocket.accept());
+        } catch (IOException e) {
+            throw new NativeError("accept failed: " + e.getMessage());
+        }
+    }
+
+    void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<server socket " + serverSocket.getLocalPort() + ">";
+    }
+}
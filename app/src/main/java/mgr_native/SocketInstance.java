@@ -0,0 +1,95 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrInstance;
+import mgr.NativeError;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// One connected socket. Sent lines collect in a buffer that goes out in one
+// write on flush(), which receive() and close() also do first, so a
+// response of many lines costs one system call rather than one per line.
+public class SocketInstance extends MgrInstance {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Socket socket;
+    private final BufferedWriter writer;
+    private final BufferedReader reader;
+
+    SocketInstance(MgrSocket klass, Socket socket) throws IOException {
+        super(klass);
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.writer = new BufferedWriter(
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    void send(Object data) {
+        try {
+            writeLine(data);
+        } catch (IOException e) {
+            throw new NativeError("send failed: " + e.getMessage());
+        }
+    }
+
+    void sendAll(ListInstance lines) {
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                writeLine(lines.get(i));
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new NativeError("sendAll failed: " + e.getMessage());
+        }
+    }
+
+    // Strings go out as they are and other values the way print shows them.
+    private void writeLine(Object value) throws IOException {
+        if (value instanceof CharSequence) {
+            writer.append((CharSequence)value);
+        } else {
+            writer.write(Interpreter.stringify(value));
+        }
+        writer.write('\n');
+    }
+
+    void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new NativeError("flush failed: " + e.getMessage());
+        }
+    }
+
+    // Returns nil once the other end has closed the connection.
+    String receive() {
+        try {
+            writer.flush();
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new NativeError("receive failed: " + e.getMessage());
+        }
+    }
+
+    void close() {
+        try {
+            writer.flush();
+            socket.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<socket " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort() + ">";
+    }
+}
@@ -0,0 +1,35 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrCallable;
+import mgr.NativeError;
+
+import java.util.List;
+
+// spawn(fn) calls fn, a function of no arguments, on a new thread and
+// returns the Task running it. Tasks run in parallel with the program and
+// each other; they see the same globals, and values they share are theirs
+// to coordinate, through join.
+public class Spawn implements MgrCallable {
+    private final MgrTask task = new MgrTask();
+
+    @Override
+    public int arity() {
+        return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        if (interpreter == null) throw new NativeError("spawn needs the tree-walking interpreter.");
+
+        MgrCallable function = MgrEventLoop.callback("spawn", arguments.get(0), 0);
+        TaskInstance instance = new TaskInstance(task, interpreter.fork(), function);
+        instance.start();
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn spawn>";
+    }
+}
@@ -0,0 +1,193 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrCallable;
+import mgr.NativeError;
+import mgr.StringView;
+
+import java.util.List;
+import java.util.Map;
+
+// The string library. Its functions take string values as evaluated,
+// without flattening ropes and views first, and substring and trim return
+// views into their argument rather than copies, so taking a line apart
+// copies nothing until a piece is printed or stored as a String.
+final class StringNatives {
+    private StringNatives() { }
+
+    static void define(Map<String, Object> natives, MgrList list) {
+        add(natives, new StringNative("length", 1) {
+            @Override
+            Object apply(Object[] arguments) {
+                return (double)string(arguments[0]).length();
+            }
+        });
+        add(natives, new StringNative("substring", 3) {
+            @Override
+            Object apply(Object[] arguments) {
+                CharSequence text = string(arguments[0]);
+                int start = index(arguments[1]);
+                int end = index(arguments[2]);
+                if (start > end || end > text.length()) {
+                    throw new NativeError("substring range out of bounds.");
+                }
+                return StringView.of(text, start, end);
+            }
+        });
+        add(natives, new StringNative("indexOf", 2) {
+            @Override
+            Object apply(Object[] arguments) {
+                return (double)indexOf(string(arguments[0]), string(arguments[1]));
+            }
+        });
+        add(natives, new StringNative("trim", 1) {
+            @Override
+            Object apply(Object[] arguments) {
+                CharSequence text = string(arguments[0]);
+                int start = 0;
+                int end = text.length();
+                while (start < end && text.charAt(start) <= ' ') start++;
+                while (end > start && text.charAt(end - 1) <= ' ') end--;
+                return StringView.of(text, start, end);
+            }
+        });
+        add(natives, new StringNative("startsWith", 2) {
+            @Override
+            Object apply(Object[] arguments) {
+                return regionMatches(string(arguments[0]), 0, string(arguments[1]));
+            }
+        });
+        add(natives, new StringNative("charAt", 2) {
+            @Override
+            Object apply(Object[] arguments) {
+                CharSequence text = string(arguments[0]);
+                int index = index(arguments[1]);
+                if (index >= text.length()) {
+                    throw new NativeError("charAt index out of bounds.");
+                }
+                return String.valueOf(text.charAt(index));
+            }
+        });
+        add(natives, new StringNative("replace", 3) {
+            @Override
+            Object apply(Object[] arguments) {
+                String text = string(arguments[0]).toString();
+                return text.replace(string(arguments[1]), string(arguments[2]));
+            }
+        });
+        add(natives, new StringNative("split", 2) {
+            @Override
+            Object apply(Object[] arguments) {
+                CharSequence text = string(arguments[0]);
+                CharSequence separator = string(arguments[1]);
+                if (separator.length() == 0) throw new NativeError("split expects a non-empty separator.");
+
+                ListInstance parts = new ListInstance(list);
+                int start = 0;
+                int end;
+                while ((end = indexOf(text, separator, start)) != -1) {
+                    parts.add(StringView.of(text, start, end));
+                    start = end + separator.length();
+                }
+                parts.add(StringView.of(text, start, text.length()));
+                return parts;
+            }
+        });
+        add(natives, new StringNative("join", 2) {
+            @Override
+            Object apply(Object[] arguments) {
+                if (!(arguments[0] instanceof ListInstance)) throw new NativeError("join expects a list.");
+                ListInstance parts = (ListInstance)arguments[0];
+                CharSequence separator = string(arguments[1]);
+
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < parts.size(); i++) {
+                    if (i > 0) builder.append(separator);
+                    Object part = parts.get(i);
+                    if (part instanceof CharSequence) {
+                        builder.append((CharSequence)part);
+                    } else {
+                        builder.append(Interpreter.stringify(part));
+                    }
+                }
+                return builder.toString();
+            }
+        });
+    }
+
+    private static void add(Map<String, Object> natives, StringNative function) {
+        natives.put(function.name, function);
+    }
+
+    // The index of the first occurrence of needle in text, or -1.
+    static int indexOf(CharSequence text, CharSequence needle) {
+        return indexOf(text, needle, 0);
+    }
+
+    // The same, looking only at occurrences starting at from or later.
+    static int indexOf(CharSequence text, CharSequence needle, int from) {
+        if (text instanceof String && needle instanceof String) {
+            return ((String)text).indexOf((String)needle, from);
+        }
+
+        for (int i = from; i + needle.length() <= text.length(); i++) {
+            if (regionMatches(text, i, needle)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, CharSequence part) {
+        if (offset + part.length() > text.length()) return false;
+        for (int i = 0; i < part.length(); i++) {
+            if (text.charAt(offset + i) != part.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    abstract static class StringNative implements MgrCallable {
+        final String name;
+        private final int arity;
+
+        StringNative(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        abstract Object apply(Object[] arguments);
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        // Overridden so string arguments arrive as they are.
+        @Override
+        public Object call(Interpreter interpreter, Object[] arguments) {
+            return apply(arguments);
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return apply(arguments.toArray());
+        }
+
+        CharSequence string(Object value) {
+            if (!(value instanceof CharSequence)) {
+                throw new NativeError(name + " expects a string.");
+            }
+            return (CharSequence)value;
+        }
+
+        int index(Object value) {
+            if (!(value instanceof Double) || (double)value != Math.floor((double)value) || (double)value < 0) {
+                throw new NativeError(name + " expects a non-negative integer index.");
+            }
+            return (int)(double)value;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn " + name + ">";
+        }
+    }
+}
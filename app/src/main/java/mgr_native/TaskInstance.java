@@ -0,0 +1,55 @@
+package mgr_native;
+
+import mgr.Interpreter;
+import mgr.MgrCallable;
+import mgr.MgrInstance;
+import mgr.NativeError;
+import mgr.RuntimeError;
+
+// A function running on a thread of its own, with its own Interpreter.
+public class TaskInstance extends MgrInstance {
+    private final Thread thread;
+    private Object result = null;
+    // What ended the task, if it didn't return.
+    private RuntimeException failure = null;
+
+    TaskInstance(MgrTask klass, Interpreter interpreter, MgrCallable function) {
+        super(klass);
+        thread = new Thread(() -> {
+            try {
+                result = interpreter.runTask(function);
+            } catch (RuntimeError error) {
+                // Reported by runTask; join tells the script.
+                failure = error;
+            } catch (RuntimeException e) {
+                // A fault in a native rather than the script. Leave it to
+                // the thread's uncaught exception handler to report.
+                failure = e;
+                throw e;
+            }
+        }, "mgr-task");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Object join() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new NativeError("Interrupted while joining a task.");
+        }
+
+        if (failure instanceof RuntimeError) {
+            throw new NativeError("Joined task failed: " + failure.getMessage());
+        }
+        if (failure != null) throw new NativeError("Joined task failed: " + failure);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
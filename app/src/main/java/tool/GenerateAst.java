@@ -14,33 +14,35 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
-            "Binary   : Expr left, Token operator, Expr right",
-            "Call     : Expr callee, Token paren, List<Expr> arguments",
-            "Get      : Expr object, Token name",
+            "Assign   : Token name, Expr value | int depth = -1, int slot",
+            "Binary   : Expr left, Token operator, Expr right | int seenTypes",
+            "Call     : Expr callee, Token paren, List<Expr> arguments | CallCache site = new CallCache()",
+            "Get      : Expr object, Token name | InlineCache cache = new InlineCache()",
             "NilGet   : Expr object, Token name",
-            "Set      : Expr object, Token name, Expr value",
-            "This     : Token keyword",
-            "Super    : Token keyword, Token method",
+            "Set      : Expr object, Token name, Expr value | InlineCache cache = new InlineCache()",
+            "This     : Token keyword | int depth = -1, int slot",
+            "Super    : Token keyword, Token method | int depth = -1",
             "Ternary  : Token operator1, Token operator2, Expr first, Expr second, Expr third",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Logical  : Expr left, Token operator, Expr right",
             "Unary    : Token operator, Expr right",
-            "Lambda   : List<Token> params, List<Stmt> body",
-            "Variable : Token name"
+            "Lambda   : List<Token> params, List<Stmt> body | int frameSize, JitState jit = new JitState()",
+            "Variable : Token name | int depth = -1, int slot"
         ));
         defineAst(outputDir, "Stmt", Arrays.asList(
-            "Block      : List<Stmt> statements",
+            "Block      : List<Stmt> statements | boolean scoped",
             "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Getter> getters",
             "Expression : Expr expression",
-            "Function   : Token name, List<Token> params, List<Stmt> body",
+            "Function   : Token name, List<Token> params, List<Stmt> body | int frameSize, JitState jit = new JitState()",
             "Getter     : Token name, List<Stmt> body",
             "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
             "Print      : Expr expression",
-            "Return     : Token keyword, Expr value",
+            "Return     : Token keyword, Expr value | boolean tail",
             "Var        : Token name, Expr initializer",
-            "While      : Expr condition, Stmt body",
+            "While      : Expr condition, Stmt body | JitState jit = new JitState()",
+            "For        : Stmt initializer, Expr condition, Expr increment, List<Stmt> body"
+                + " | boolean scoped, boolean captures, JitState jit = new JitState()",
             "Break      : Token token"
         ));
     }
@@ -60,8 +62,9 @@ public class GenerateAst {
         // The AST classes.
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String state = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, className, fields[0].trim(), state);
         }
 
         // The base accept() method.
@@ -84,7 +87,8 @@ public class GenerateAst {
         writer.println("\t}");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   String stateList) {
         writer.println();
         writer.println("\tstatic class " + className + " extends " + baseName + " {");
 
@@ -94,6 +98,13 @@ public class GenerateAst {
             writer.println("\t\tfinal " + field + ";");
         }
 
+        // Mutable fields filled in by later passes, e.g. the resolver.
+        if (stateList != null) {
+            for (String field : stateList.split(", ")) {
+                writer.println("\t\t" + field + ";");
+            }
+        }
+
         // Constructor.
         writer.println("\t\t" + className + "(" + fieldList + ") {");
 
@@ -0,0 +1,52 @@
+package mgr;
+
+import mgr.vm.VM;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConstantFolderTest {
+    private static final String ELVIS_WITH_CALL =
+        "fun side() { print \"side\"; return 2; }\n" +
+        "print 1 ?: side();\n";
+
+    @Test public void elvisKeepsRightOperandWithSideEffects() {
+        String unoptimized = run(ELVIS_WITH_CALL, false, false);
+        assertEquals("side\n1\n", unoptimized);
+        assertEquals(unoptimized, run(ELVIS_WITH_CALL, true, false));
+        assertEquals(unoptimized, run(ELVIS_WITH_CALL, true, true));
+    }
+
+    @Test public void elvisFoldsLiteralOperands() {
+        String source = "print 1 ?: 2;\nprint nil ?: 3;\n";
+        assertEquals("1\n3\n", run(source, true, false));
+        assertEquals(run(source, false, false), run(source, true, false));
+    }
+
+    // Runs source the way Mgr.run does and returns what it printed.
+    private static String run(String source, boolean optimize, boolean vm) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Interpreter interpreter = new Interpreter();
+        new Resolver(interpreter.globals).resolve(statements);
+        if (optimize) statements = new Optimizer().optimize(statements);
+
+        PrintStream previous = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            if (vm) {
+                VM machine = new VM();
+                machine.interpret(new Compiler(machine).compile(statements));
+            } else {
+                interpreter.interpret(statements);
+            }
+        } finally {
+            System.setOut(previous);
+        }
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+}